@@ -0,0 +1,99 @@
+#!/bin/bash
+# Compares start-up of the JVM and the native build of the fuzzer.
+#
+#   ./benchmark-startup.sh [file] [runs]
+#
+# For each build, it reports the median over all runs of
+# - start-up: until the engine is created ("Available languages" on stderr),
+# - first execution: until the first input has run ("Finished the first
+#   execution" on stderr; results on stdout are written in batches, so they
+#   would measure the flush interval instead),
+# - total: until the process exits.
+# The native build is also run with an engine cache, once starting cold
+# without and once warm from a stored cache.
+# Build both first with `make classpath compile` and `make native`.
+set -euo pipefail
+
+SCRIPT_DIR="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+cd "$SCRIPT_DIR"
+
+FILE="${1:-examples/program.py}"
+RUNS="${2:-10}"
+case "$FILE" in
+    *.js) LANGUAGE=js ;;
+    *) LANGUAGE=python ;;
+esac
+
+if [ -z "${JAVA_HOME:-}" ]; then
+    JAVA="java"
+else
+    JAVA="$JAVA_HOME/bin/java"
+fi
+
+# Milliseconds since the epoch, without spawning a process.
+now_ms() {
+    local t="${EPOCHREALTIME/[.,]/}"
+    echo $((t / 1000))
+}
+
+# Runs the fuzzer once and prints "<start-up> <first execution> <total>".
+measure() {
+    local start end times
+    start=$(now_ms)
+    times=$("$@" --language "$LANGUAGE" --file "$FILE" --tooling --no-color 2>&1 | {
+        startup=-1
+        first=-1
+        while IFS= read -r line; do
+            if [ "$startup" -lt 0 ] && [[ "$line" == "Available languages"* ]]; then
+                startup=$(($(now_ms) - start))
+            fi
+            if [ "$first" -lt 0 ] && [[ "$line" == "Finished the first execution"* ]]; then
+                first=$(($(now_ms) - start))
+            fi
+        done
+        echo "$startup $first"
+    })
+    end=$(now_ms)
+    echo "$times $((end - start))"
+}
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { if (NR % 2) print values[(NR + 1) / 2]; else print int((values[NR / 2] + values[NR / 2 + 1]) / 2) }'
+}
+
+# Usage: benchmark <name> <setup before each run> <command...>
+benchmark() {
+    local name="$1"
+    local setup="$2"
+    shift 2
+    local results
+    results=$(for _ in $(seq "$RUNS"); do "$setup" > /dev/null 2>&1; measure "$@"; done)
+    printf "| %-13s | %10s | %15s | %8s |\n" "$name" \
+        "$(cut -d' ' -f1 <<< "$results" | median) ms" \
+        "$(cut -d' ' -f2 <<< "$results" | median) ms" \
+        "$(cut -d' ' -f3 <<< "$results" | median) ms"
+}
+
+echo "Fuzzing $FILE ($LANGUAGE), median of $RUNS runs"
+echo
+echo "| Build         |   Start-up | First execution |    Total |"
+echo "|---------------|------------|-----------------|----------|"
+
+if [ -f classpath ] && [ -d target/classes ]; then
+    benchmark "JVM" true "$JAVA" -cp "$(cat classpath):target/classes" de.hpi.swa.cli.FuzzMain
+else
+    echo "Skipping JVM, run 'make classpath compile' first." >&2
+fi
+
+if [ -x target/graalfuzz ]; then
+    benchmark "Native" true target/graalfuzz
+
+    CACHE="$(mktemp -d)"
+    trap 'rm -rf "$CACHE"' EXIT
+    clear_cache() { rm -rf "${CACHE:?}"/*; }
+    benchmark "Native, cold" clear_cache target/graalfuzz --engine-cache "$CACHE"
+    # The last cold run left a stored cache behind.
+    benchmark "Native, warm" true target/graalfuzz --engine-cache "$CACHE"
+else
+    echo "Skipping native, run 'make native' first." >&2
+fi
@@ -0,0 +1,121 @@
+package de.hpi.swa.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.oracle.truffle.api.source.Source;
+
+import de.hpi.swa.analysis.grouping.GroupingStrategy;
+import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.coverage.Coverage;
+import de.hpi.swa.generator.InterestingValues;
+import de.hpi.swa.generator.MemberModel;
+import de.hpi.swa.generator.Pool;
+import de.hpi.swa.generator.Runner.FunctionResult;
+import de.hpi.swa.generator.Runner.RunResult;
+import de.hpi.swa.generator.Seeds;
+import de.hpi.swa.generator.Trace;
+import de.hpi.swa.generator.Universe;
+
+// Checks that snapshots of the analysis on the fork/join pool are identical
+// to sequential ones, down to the bits of every score and the order of groups
+// and runs. Runs are accepted one by one into a sequential and a parallel
+// engine, with and without grouping and a reservoir, and snapshots are taken
+// of all runs and of the best few of each group. Exits with 1 if any differ.
+//
+//   make check-analysis, or after `mvn test-compile`:
+//   java -cp ...:target/classes:target/test-classes de.hpi.swa.analysis.AnalysisCheck [runs]
+public class AnalysisCheck {
+
+    private static final int LINES = 40;
+    private static final List<String> TYPE_NAMES = List.of("int", "str", "list", "dict", "NoneType");
+    private static final List<String> EXCEPTIONS = List.of("TypeError", "AttributeError", "KeyError",
+            "ZeroDivisionError");
+
+    public static void main(String[] args) {
+        var runs = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        var random = new Random(42);
+        var seeds = new Seeds();
+        var interesting = new InterestingValues();
+        var pool = new Pool(seeds, interesting, new MemberModel(), 2);
+        var results = generate(runs, random, seeds, interesting, pool);
+
+        var failed = false;
+        for (var grouping : List.of(new GroupingStrategy.CompositeAllGroups(), new GroupingStrategy.NoGroups())) {
+            for (var reservoir : new int[] { AnalysisEngine.UNBOUNDED, 3 }) {
+                var sequential = new AnalysisEngine(reservoir, false);
+                var parallel = new AnalysisEngine(reservoir, true);
+                sequential.begin(pool, grouping);
+                parallel.begin(pool, grouping);
+                for (var result : results) {
+                    sequential.accept(result);
+                    parallel.accept(result);
+                }
+                for (var top : new int[] { AnalysisEngine.UNBOUNDED, 3 }) {
+                    var expected = sequential.snapshot(top);
+                    var actual = parallel.snapshot(top);
+                    var difference = firstDifference(expected, actual);
+                    var name = grouping.getClass().getSimpleName() + ", reservoir " + reservoir + ", top " + top;
+                    if (difference >= 0) {
+                        failed = true;
+                        System.err.println(name + ": group " + difference + " of " + expected.size() + " differs.");
+                    } else {
+                        System.err.println(name + ": " + expected.size() + " groups are identical.");
+                    }
+                }
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    // The index of the first group that differs, or -1. Records compare
+    // doubles by their bits, and the runs are the same instances.
+    private static int firstDifference(List<ResultGroup> expected, List<ResultGroup> actual) {
+        for (var i = 0; i < Math.min(expected.size(), actual.size()); i++) {
+            if (!expected.get(i).equals(actual.get(i))) {
+                return i;
+            }
+        }
+        return expected.size() == actual.size() ? -1 : Math.min(expected.size(), actual.size());
+    }
+
+    // Runs of a function with two parameters that covers a few lines
+    // depending on its arguments, and either returns or crashes. Their traces
+    // are added to the pool, like while fuzzing.
+    private static List<RunResult> generate(int runs, Random random, Seeds seeds, InterestingValues interesting,
+            Pool pool) {
+        var source = Source.newBuilder("python", "\n".repeat(LINES - 1), "program.py").build();
+        var results = new ArrayList<RunResult>(runs);
+        for (var i = 0; i < runs; i++) {
+            var universe = new Universe();
+            var trace = new Trace();
+            var args = universe.generateArgs(2, random, seeds, interesting);
+            trace.add(new Trace.Call(args));
+
+            var coverage = new Coverage();
+            var first = random.nextInt(LINES);
+            for (var line = first; line < LINES; line += 1 + random.nextInt(8)) {
+                coverage.addCovered(source.createSection(line + 1));
+            }
+
+            FunctionResult output;
+            if (random.nextInt(4) > 0) {
+                var typeName = TYPE_NAMES.get(random.nextInt(TYPE_NAMES.size()));
+                var value = String.valueOf(random.nextInt(1000));
+                trace.add(new Trace.Return(typeName, value));
+                output = new FunctionResult.Normal(typeName, value);
+            } else {
+                var message = EXCEPTIONS.get(random.nextInt(EXCEPTIONS.size())) + ": line " + first;
+                trace.add(new Trace.Crash(message));
+                output = new FunctionResult.Crash(message, List.of("<python> f(program.py:" + (first + 1) + ")"));
+            }
+            var nanos = random.nextInt(1_000_000);
+            pool.add(trace, coverage, nanos);
+            results.add(new RunResult(universe, args, output, trace, nanos));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,166 @@
+package de.hpi.swa.serialization;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gson.Gson;
+
+import de.hpi.swa.cli.logger.JsonLogger;
+import de.hpi.swa.generator.InterestingValues;
+import de.hpi.swa.generator.Runner.FunctionResult;
+import de.hpi.swa.generator.Runner.RunResult;
+import de.hpi.swa.generator.Seeds;
+import de.hpi.swa.generator.Trace;
+import de.hpi.swa.generator.Universe;
+import de.hpi.swa.generator.Value;
+
+// Compares writing run results as JSON lines by building a JSON tree first,
+// like the logger used to, with streaming them through the type adapters.
+// Reports time and allocated bytes per run, and checks that both produce the
+// same output.
+//
+//   make benchmark-serialization, or after `mvn test-compile`:
+//   java -cp ...:target/classes:target/test-classes de.hpi.swa.serialization.SerializationBenchmark [runs] [rounds]
+public class SerializationBenchmark {
+
+    private static final int MEMBERS_PER_OBJECT = 4;
+
+    public static void main(String[] args) {
+        var runs = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        var rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        var results = generate(runs, new Random(42));
+        var gson = GsonConfig.createGson();
+
+        var tree = renderTree(gson, results);
+        var streaming = renderStreaming(results);
+        if (!tree.equals(streaming)) {
+            System.err.println("The outputs differ.");
+            System.exit(1);
+        }
+        System.err.println("Writing " + runs + " runs, " + tree.length() / runs + " characters each, best of "
+                + rounds + " rounds.");
+
+        // Taking the best round leaves out warm-up and GC pauses.
+        var treeBest = Measurement.WORST;
+        var streamingBest = Measurement.WORST;
+        for (var round = 0; round < rounds; round++) {
+            treeBest = treeBest.min(measure(runs, () -> {
+                var out = Writer.nullWriter();
+                for (var result : results) {
+                    writeTree(gson, result, out);
+                }
+            }));
+            var logger = new JsonLogger(Writer.nullWriter());
+            streamingBest = streamingBest.min(measure(runs, () -> {
+                for (var result : results) {
+                    logger.logRun(result);
+                }
+            }));
+        }
+
+        System.out.println("| Variant   |  ns/run | bytes/run |");
+        System.out.println("|-----------|---------|-----------|");
+        System.out.println(String.format("| Tree      | %7d | %9d |", treeBest.nanos, treeBest.bytes));
+        System.out.println(String.format("| Streaming | %7d | %9d |", streamingBest.nanos, streamingBest.bytes));
+    }
+
+    private record Measurement(long nanos, long bytes) {
+
+        static final Measurement WORST = new Measurement(Long.MAX_VALUE, Long.MAX_VALUE);
+
+        Measurement min(Measurement other) {
+            return new Measurement(Math.min(nanos, other.nanos), Math.min(bytes, other.bytes));
+        }
+    }
+
+    private static void writeTree(Gson gson, RunResult result, Writer out) throws IOException {
+        var jsonElement = gson.toJsonTree(result);
+        jsonElement.getAsJsonObject().addProperty("type", "run");
+        out.write(gson.toJson(jsonElement));
+        out.write('\n');
+    }
+
+    private static String renderTree(Gson gson, List<RunResult> results) {
+        var out = new StringWriter();
+        try {
+            for (var result : results) {
+                writeTree(gson, result, out);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static String renderStreaming(List<RunResult> results) {
+        var out = new StringWriter();
+        var logger = new JsonLogger(out);
+        for (var result : results) {
+            logger.logRun(result);
+        }
+        return out.toString();
+    }
+
+    private interface Body {
+        void run() throws IOException;
+    }
+
+    private static Measurement measure(int runs, Body body) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var thread = Thread.currentThread().threadId();
+        var bytesBefore = threads.getThreadAllocatedBytes(thread);
+        var start = System.nanoTime();
+        try {
+            body.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var nanos = System.nanoTime() - start;
+        var bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+        return new Measurement(nanos / runs, bytes / runs);
+    }
+
+    // Results shaped like those of fuzzing a function that reads a few
+    // members of an object argument.
+    private static List<RunResult> generate(int runs, Random random) {
+        var seeds = new Seeds();
+        var interesting = new InterestingValues();
+        var results = new ArrayList<RunResult>(runs);
+        for (var i = 0; i < runs; i++) {
+            var universe = new Universe();
+            var trace = new Trace();
+            var args = new ArrayList<Value>();
+            args.add(new Value.ObjectValue(universe.createObject()));
+            args.addAll(universe.generateArgs(1, random, seeds, interesting));
+            trace.add(new Trace.Call(args));
+
+            var id = ((Value.ObjectValue) args.get(0)).id();
+            var object = universe.get(id);
+            for (var m = 0; m < MEMBERS_PER_OBJECT; m++) {
+                var key = "member" + m;
+                var value = universe.generateValue(random, seeds, interesting);
+                object.members.put(key, value);
+                trace.add(new Trace.QueryMember(id, key));
+                trace.add(new Trace.Member(id, key, value));
+            }
+
+            FunctionResult output;
+            if (random.nextBoolean()) {
+                trace.add(new Trace.Return("int", String.valueOf(i)));
+                output = new FunctionResult.Normal("int", String.valueOf(i));
+            } else {
+                var message = "AttributeError: 'int' object has no attribute 'member" + i % MEMBERS_PER_OBJECT + "'";
+                trace.add(new Trace.Crash(message));
+                output = new FunctionResult.Crash(message, List.of("<python> f(program.py:3)"));
+            }
+            results.add(new RunResult(universe, args, output, trace, random.nextInt(1_000_000)));
+        }
+        return results;
+    }
+}
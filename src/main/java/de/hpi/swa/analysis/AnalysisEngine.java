@@ -9,10 +9,40 @@ import de.hpi.swa.analysis.heuristics.KeyHeuristics;
 import de.hpi.swa.generator.Pool;
 import de.hpi.swa.generator.Runner.RunResult;
 import java.util.*;
-import java.util.stream.Collectors;
-
+import java.util.stream.IntStream;
+
+// Groups runs and ranks the groups and the runs within them. Runs are added
+// one by one with `accept` while fuzzing, which updates their group and the
+// statistics of the heuristics. `snapshot` ranks what was accepted so far, so
+// that it can be published periodically, and the final ranking doesn't need
+// another pass over all runs. Keys and features are extracted once per run
+// into a FeatureTable when it is accepted, with the coverage the pool has for
+// it at that time, and grouping and all heuristics work on its ids.
+//
+// With a reservoir size, each group keeps only that many of its best runs,
+// so that memory depends on the number of groups rather than the number of
+// executions. The heuristics only keep statistics either way.
+//
+// Runs are accepted one by one while fuzzing, so only `snapshot` uses the
+// common fork/join pool, to score the parts of keys, groups and the runs of
+// large groups there. Every sum is still taken in the same order, and sorts
+// are stable over the same input order, so results are bit-identical to the
+// sequential path, which AnalysisCheck compares.
+//
+// Loggers only show the best few runs of each group, so `snapshot` can rank
+// just those: the scores of a group's runs are computed into an array, the
+// best ones are selected with a bounded heap over their indices, and the
+// breakdown of the scores is only built for the runs that are kept.
 public class AnalysisEngine {
 
+    public static final int UNBOUNDED = 0;
+
+    // Below this many runs or groups, forking costs more than it saves.
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    private static final Comparator<ResultGroup> BY_GROUP_SCORE = Comparator.comparingDouble(ResultGroup::score)
+            .reversed();
+
     private static class WeightedHeuristic<T> {
         final T heuristic;
         final double weight;
@@ -30,7 +60,27 @@ public class AnalysisEngine {
     private double groupWeightSum = 0.0;
     private double itemWeightSum = 0.0;
 
+    private Pool pool;
+    private GroupingStrategy groupingStrategy;
+    private final FeatureTable features = new FeatureTable();
+    // Groups by id. Ids are assigned by the ids of the parts of the key.
+    private final Map<List<Integer>, Integer> groupIds = new HashMap<>();
+    private final List<GroupKey> groupKeys = new ArrayList<>();
+    private final List<Members> groups = new ArrayList<>();
+    private final int reservoirSize;
+    private final boolean parallel;
+
     public AnalysisEngine() {
+        this(UNBOUNDED);
+    }
+
+    public AnalysisEngine(int reservoirSize) {
+        this(reservoirSize, true);
+    }
+
+    public AnalysisEngine(int reservoirSize, boolean parallel) {
+        this.reservoirSize = reservoirSize;
+        this.parallel = parallel;
         registerKeyHeuristic(GroupKey.InputShape.class, new KeyHeuristics.InputValidity(), 100.0);
         registerKeyHeuristic(GroupKey.InputShape.class, new KeyHeuristics.InputShapeSimplicity(), 10.0);
         registerKeyHeuristic(GroupKey.InputShape.class, new KeyHeuristics.OutputShapeDiversity());
@@ -60,79 +110,204 @@ public class AnalysisEngine {
         groupWeightSum += weight;
     }
 
+    // Analyzes all runs at once. The traces of all runs must already be in
+    // the pool, which must not change meanwhile.
     public List<ResultGroup> analyze(List<RunResult> results, Pool pool, GroupingStrategy groupingStrategy) {
-        if (results.isEmpty())
-            return Collections.emptyList();
+        begin(pool, groupingStrategy);
+        for (var result : results) {
+            accept(result);
+        }
+        return snapshot();
+    }
 
-        Map<GroupKey, Set<RunResult>> groups = groupResultsByKey(results, pool, groupingStrategy);
+    // Forgets all runs and starts a new analysis.
+    public void begin(Pool pool, GroupingStrategy groupingStrategy) {
+        this.pool = pool;
+        this.groupingStrategy = groupingStrategy;
+        features.clear();
+        groupIds.clear();
+        groupKeys.clear();
+        groups.clear();
+        for (var hs : keyHeuristics.values()) {
+            for (var h : hs) {
+                h.heuristic.reset();
+            }
+        }
+        for (var h : itemHeuristics) {
+            h.heuristic.reset();
+        }
+    }
 
-        prepareHeuristics(results, pool);
+    // Adds a run. Its trace must already be in the pool.
+    public void accept(RunResult result) {
+        var row = features.add(result, pool);
+        for (var hs : keyHeuristics.values()) {
+            for (var h : hs) {
+                h.heuristic.accept(features, row);
+            }
+        }
+        for (var h : itemHeuristics) {
+            h.heuristic.accept(features, row);
+        }
+        // After the heuristics, so that the run is scored with its own
+        // statistics included.
+        groups.get(groupOf(row)).add(new Member(result, row));
+    }
 
-        List<ResultGroup> scoredGroups = new ArrayList<>();
-        Map<GroupKey, Map<String, Double>> keyScoreCache = new HashMap<>();
+    // Ranks the runs accepted so far. Only scores are computed, from the
+    // statistics the heuristics keep.
+    public List<ResultGroup> snapshot() {
+        return snapshot(UNBOUNDED);
+    }
 
-        for (var entry : groups.entrySet()) {
-            GroupKey key = entry.getKey();
-            Set<RunResult> items = entry.getValue();
+    // Like snapshot, but each group lists only its best `top` runs, or all of
+    // them if it is UNBOUNDED. Groups and their scores are the same.
+    public List<ResultGroup> snapshot(int top) {
+        if (groups.isEmpty())
+            return Collections.emptyList();
 
-            Map<String, Double> groupScores = getKeyScoresRecursively(key, keyScoreCache);
-            double groupTotalScore = groupScores.values().stream()
-                    .mapToDouble(Double::doubleValue)
-                    .filter(d -> !Double.isNaN(d) && !Double.isInfinite(d))
-                    .sum();
-            groupTotalScore = groupWeightSum > 0 ? groupTotalScore / groupWeightSum : groupTotalScore;
+        var keyScoreCache = scoreParts();
+        var forkGroups = parallel && groups.size() >= PARALLEL_THRESHOLD;
+        var scoredGroups = (forkGroups ? IntStream.range(0, groups.size()).parallel()
+                : IntStream.range(0, groups.size()))
+                .mapToObj(g -> scoreGroup(g, keyScoreCache, top))
+                .toArray(ResultGroup[]::new);
+
+        // Both sorts are stable.
+        if (forkGroups) {
+            Arrays.parallelSort(scoredGroups, BY_GROUP_SCORE);
+        } else {
+            Arrays.sort(scoredGroups, BY_GROUP_SCORE);
+        }
 
-            List<ScoredRunResult> sortedItems = items.stream()
-                    .map(r -> {
-                        Map<String, Double> itemScores = scoreItem(r);
-                        double itemTotalScore = itemScores.values().stream()
-                                .mapToDouble(Double::doubleValue)
-                                .filter(d -> !Double.isNaN(d) && !Double.isInfinite(d))
-                                .sum();
-                        itemTotalScore = itemWeightSum > 0 ? itemTotalScore / itemWeightSum : itemTotalScore;
-                        return ScoredRunResult.from(r, itemTotalScore, itemScores, groupScores, key);
-                    })
-                    .sorted(Comparator.comparingDouble(ScoredRunResult::score).reversed())
-                    .collect(Collectors.toList());
+        return new ArrayList<>(Arrays.asList(scoredGroups));
+    }
 
-            scoredGroups.add(new ResultGroup(key, sortedItems, groupTotalScore, groupScores));
+    private ResultGroup scoreGroup(int g, Map<GroupKey, Map<String, Double>> keyScoreCache, int top) {
+        GroupKey key = groupKeys.get(g);
+        var items = groups.get(g).members().toArray(Member[]::new);
+
+        Map<String, Double> groupScores = getKeyScoresRecursively(key, keyScoreCache);
+        double groupTotalScore = groupScores.values().stream()
+                .mapToDouble(Double::doubleValue)
+                .filter(d -> !Double.isNaN(d) && !Double.isInfinite(d))
+                .sum();
+        groupTotalScore = groupWeightSum > 0 ? groupTotalScore / groupWeightSum : groupTotalScore;
+
+        var scores = new double[items.length];
+        var indices = parallel && items.length >= PARALLEL_THRESHOLD
+                ? IntStream.range(0, items.length).parallel()
+                : IntStream.range(0, items.length);
+        indices.forEach(i -> scores[i] = itemScore(items[i].row()));
+
+        var best = best(scores, top == UNBOUNDED ? items.length : Math.min(top, items.length));
+        List<ScoredRunResult> sortedItems = new ArrayList<>(best.length);
+        for (var i : best) {
+            sortedItems.add(ScoredRunResult.from(items[i].result(), scores[i], scoreItem(items[i].row()),
+                    groupScores, key));
         }
 
-        scoredGroups.sort(Comparator.comparingDouble(ResultGroup::score).reversed());
-
-        return scoredGroups;
+        return new ResultGroup(key, sortedItems, groupTotalScore, groupScores);
     }
 
-    private Map<GroupKey, Set<RunResult>> groupResultsByKey(List<RunResult> results, Pool pool,
-            GroupingStrategy groupingStrategy) {
-        Map<RunResult, GroupKey> keyMap = new HashMap<>();
-        for (RunResult r : results) {
-            keyMap.put(r, createKey(r, pool, groupingStrategy));
+    // The indices of the k highest scores, highest first. Equal scores keep
+    // their order, like in a stable sort. The heap has the worst of the best
+    // so far at its root, so each score is compared to that first.
+    private static int[] best(double[] scores, int k) {
+        var heap = new int[k];
+        var size = 0;
+        for (var i = 0; i < scores.length; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++, scores);
+            } else if (k > 0 && better(i, heap[0], scores)) {
+                heap[0] = i;
+                siftDown(heap, size, scores);
+            }
         }
+        // Taking the worst one off repeatedly fills the result from the back.
+        var best = new int[size];
+        while (size > 0) {
+            best[size - 1] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size, scores);
+        }
+        return best;
+    }
 
-        Map<GroupKey, Set<RunResult>> groups = new HashMap<>();
-        for (var runResult : keyMap.keySet()) {
-            var groupKey = keyMap.get(runResult);
-            groups.computeIfAbsent(groupKey, k -> new HashSet<>()).add(runResult);
+    private static boolean better(int a, int b, double[] scores) {
+        var order = Double.compare(scores[a], scores[b]);
+        return order > 0 || (order == 0 && a < b);
+    }
+
+    private static void siftUp(int[] heap, int at, double[] scores) {
+        var index = heap[at];
+        while (at > 0) {
+            var parent = (at - 1) >>> 1;
+            if (!better(heap[parent], index, scores)) {
+                break;
+            }
+            heap[at] = heap[parent];
+            at = parent;
         }
-        return groups;
+        heap[at] = index;
     }
 
-    private void prepareHeuristics(List<RunResult> results, Pool pool) {
-        for (var hs : keyHeuristics.values()) {
-            for (var h : hs) {
-                h.heuristic.prepare(results, pool);
+    private static void siftDown(int[] heap, int size, double[] scores) {
+        if (size == 0) {
+            return;
+        }
+        var index = heap[0];
+        var at = 0;
+        while (2 * at + 1 < size) {
+            var child = 2 * at + 1;
+            if (child + 1 < size && better(heap[child], heap[child + 1], scores)) {
+                child++;
             }
+            if (!better(index, heap[child], scores)) {
+                break;
+            }
+            heap[at] = heap[child];
+            at = child;
         }
-        for (var h : itemHeuristics) {
-            h.heuristic.prepare(results, pool);
+        heap[at] = index;
+    }
+
+    // Scores the parts of all group keys up front, so that groups can be
+    // scored concurrently with only reads of the cache. Parts of keys are
+    // interned, so groups share their instances.
+    private Map<GroupKey, Map<String, Double>> scoreParts() {
+        var parts = new ArrayList<GroupKey>();
+        var seen = Collections.newSetFromMap(new IdentityHashMap<GroupKey, Boolean>());
+        for (var key : groupKeys) {
+            collectParts(key, parts, seen);
+        }
+        var noCache = Map.<GroupKey, Map<String, Double>>of();
+        var partScores = (parallel && parts.size() >= PARALLEL_THRESHOLD ? parts.parallelStream() : parts.stream())
+                .map(part -> getKeyScoresRecursively(part, noCache))
+                .toList();
+        Map<GroupKey, Map<String, Double>> cache = new IdentityHashMap<>();
+        for (var i = 0; i < parts.size(); i++) {
+            cache.put(parts.get(i), partScores.get(i));
+        }
+        return cache;
+    }
+
+    private static void collectParts(GroupKey key, List<GroupKey> parts, Set<GroupKey> seen) {
+        if (key instanceof GroupKey.Composite c) {
+            for (var sub : c.parts()) {
+                collectParts(sub, parts, seen);
+            }
+        } else if (seen.add(key)) {
+            parts.add(key);
         }
     }
 
     private Map<String, Double> getKeyScoresRecursively(GroupKey key,
             Map<GroupKey, Map<String, Double>> cache) {
-        if (cache.containsKey(key)) {
-            return cache.get(key);
+        var cached = cache.get(key);
+        if (cached != null) {
+            return cached;
         }
 
         Map<String, Double> scores = new HashMap<>();
@@ -152,7 +327,6 @@ public class AnalysisEngine {
             }
         }
 
-        cache.put(key, scores);
         return scores;
     }
 
@@ -160,27 +334,148 @@ public class AnalysisEngine {
     private double getScore(GroupKey key, WeightedHeuristic<?> h) {
         // Safe cast because we registered it with the correct type
         Heuristic.KeyHeuristic<GroupKey> typedH = (Heuristic.KeyHeuristic<GroupKey>) h.heuristic;
-        return typedH.score(key);
+        return typedH.score(features, features.idOf(key));
+    }
+
+    // The total of the weighted item scores of a row, without building the
+    // breakdown by heuristic.
+    private double itemScore(int row) {
+        double total = 0.0;
+        for (var h : itemHeuristics) {
+            double s = h.heuristic.score(features, row) * h.weight;
+            if (!Double.isNaN(s) && !Double.isInfinite(s)) {
+                total += s;
+            }
+        }
+        return itemWeightSum > 0 ? total / itemWeightSum : total;
+    }
+
+    // Changes whenever the item score of any row may have changed.
+    private long itemChanges() {
+        long changes = 0;
+        for (var h : itemHeuristics) {
+            changes += h.heuristic.changes();
+        }
+        return changes;
     }
 
-    private Map<String, Double> scoreItem(RunResult item) {
+    private Map<String, Double> scoreItem(int row) {
         Map<String, Double> scores = new HashMap<>();
         for (var h : itemHeuristics) {
-            scores.put(h.heuristic.getName(), h.heuristic.score(item) * h.weight);
+            scores.put(h.heuristic.getName(), h.heuristic.score(features, row) * h.weight);
         }
         return scores;
     }
 
-    private GroupKey createKey(RunResult r, Pool pool, GroupingStrategy groupingStrategy) {
-        return switch (groupingStrategy) {
+    // The id of the group of a row, creating the group if it is new.
+    private int groupOf(int row) {
+        var parts = switch (groupingStrategy) {
+            case GroupingStrategy.NoGroups s -> List.<Integer>of();
+            case GroupingStrategy.CompositeAllGroups c -> List.of(features.inputShape(row), features.path(row),
+                    features.outputShape(row), features.exceptionType(row));
+        };
+        var id = groupIds.get(parts);
+        if (id != null) {
+            return id;
+        }
+        GroupKey key = switch (groupingStrategy) {
             case GroupingStrategy.NoGroups s -> new GroupKey.Generic("All");
-            case GroupingStrategy.CompositeAllGroups c -> {
-                var k1 = GroupKey.InputShape.from(r.getInput(), r.getUniverse());
-                var k2 = GroupKey.PathHash.from(r.getTrace(), pool);
-                var k3 = GroupKey.OutputShape.from(r.getTrace());
-                var k4 = GroupKey.ExceptionType.from(r.getTrace());
-                yield new GroupKey.Composite(List.of(k1, k2, k3, k4));
-            }
+            case GroupingStrategy.CompositeAllGroups c -> new GroupKey.Composite(List.of(
+                    features.inputShapes.get(parts.get(0)), features.paths.get(parts.get(1)),
+                    features.outputShapes.get(parts.get(2)), features.exceptionTypes.get(parts.get(3))));
         };
+        groupIds.put(parts, groupKeys.size());
+        groupKeys.add(key);
+        groups.add(reservoirSize > 0 ? new Reservoir(reservoirSize) : new AllMembers());
+        return groupKeys.size() - 1;
+    }
+
+    // A run and its row in the feature table.
+    private record Member(RunResult result, int row) {
+    }
+
+    // The runs kept for a group.
+    private interface Members {
+        void add(Member member);
+
+        Collection<Member> members();
+    }
+
+    private static final class AllMembers implements Members {
+        private final List<Member> members = new ArrayList<>();
+
+        @Override
+        public void add(Member member) {
+            members.add(member);
+        }
+
+        @Override
+        public Collection<Member> members() {
+            return members;
+        }
+    }
+
+    // The best runs of a group, in a heap with the worst one on top. Item
+    // scores drift as the normalizers of the heuristics widen their ranges, so
+    // the kept runs are scored again before the worst one is compared to a new
+    // run, but only if a range changed since they were last scored. Among
+    // equal scores, the latest run is the worst, and members are listed in
+    // the order they were added, so that ties are broken like without a
+    // reservoir. The rows of runs that are dropped are released.
+    private final class Reservoir implements Members {
+
+        private record Kept(Member member, double score, long sequence) {
+        }
+
+        private static final Comparator<Kept> WORST_FIRST = Comparator.comparingDouble(Kept::score)
+                .thenComparing(Comparator.comparingLong(Kept::sequence).reversed());
+
+        private final int capacity;
+        private final PriorityQueue<Kept> heap;
+        private long added = 0;
+        // The item changes when the heap was last scored, or -1 if its runs
+        // were scored at different times.
+        private long scoredAt = -1;
+
+        Reservoir(int capacity) {
+            this.capacity = capacity;
+            this.heap = new PriorityQueue<>(capacity, WORST_FIRST);
+        }
+
+        @Override
+        public void add(Member member) {
+            var kept = new Kept(member, itemScore(member.row()), added++);
+            if (heap.size() < capacity) {
+                heap.add(kept);
+                return;
+            }
+            var changes = itemChanges();
+            if (changes != scoredAt) {
+                var rescored = new ArrayList<Kept>(capacity);
+                for (var k : heap) {
+                    rescored.add(new Kept(k.member(), itemScore(k.member().row()), k.sequence()));
+                }
+                heap.clear();
+                heap.addAll(rescored);
+                scoredAt = changes;
+            }
+            if (kept.score() > heap.peek().score()) {
+                features.release(heap.poll().member().row());
+                heap.add(kept);
+            } else {
+                features.release(member.row());
+            }
+        }
+
+        @Override
+        public Collection<Member> members() {
+            var kept = heap.toArray(Kept[]::new);
+            Arrays.sort(kept, Comparator.comparingLong(Kept::sequence));
+            var members = new ArrayList<Member>(kept.length);
+            for (var k : kept) {
+                members.add(k.member());
+            }
+            return members;
+        }
     }
 }
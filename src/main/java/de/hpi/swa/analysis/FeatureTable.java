@@ -0,0 +1,235 @@
+package de.hpi.swa.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.hpi.swa.analysis.grouping.GroupKey;
+import de.hpi.swa.generator.Pool;
+import de.hpi.swa.generator.Runner;
+import de.hpi.swa.generator.Runner.RunResult;
+import de.hpi.swa.generator.Universe;
+import de.hpi.swa.generator.Value;
+
+// The keys and features of accepted runs, extracted once per run so that
+// grouping and the heuristics don't derive them again. Keys are interned per
+// kind to dense ids in the order they are first seen, so that heuristics can
+// keep their statistics in arrays indexed by id. Each feature is a column
+// indexed by row. Rows of runs that are no longer needed can be released and
+// are reused by later runs.
+public class FeatureTable {
+
+    // Dense ids for the keys of one kind.
+    public static final class Keys<K extends GroupKey> {
+        private final Map<K, Integer> ids = new HashMap<>();
+        // The interned keys themselves are found without hashing them.
+        private final Map<K, Integer> interned = new IdentityHashMap<>();
+        private final List<K> keys = new ArrayList<>();
+
+        public int intern(K key) {
+            var id = ids.get(key);
+            if (id != null) {
+                return id;
+            }
+            ids.put(key, keys.size());
+            interned.put(key, keys.size());
+            keys.add(key);
+            return keys.size() - 1;
+        }
+
+        // The id of the key, or -1 if it wasn't seen.
+        public int idOf(K key) {
+            var id = interned.get(key);
+            return id != null ? id : ids.getOrDefault(key, -1);
+        }
+
+        public K get(int id) {
+            return keys.get(id);
+        }
+
+        public int size() {
+            return keys.size();
+        }
+
+        void clear() {
+            ids.clear();
+            interned.clear();
+            keys.clear();
+        }
+    }
+
+    private static final int INITIAL_ROWS = 256;
+
+    public final Keys<GroupKey.InputShape> inputShapes = new Keys<>();
+    public final Keys<GroupKey.PathHash> paths = new Keys<>();
+    public final Keys<GroupKey.OutputShape> outputShapes = new Keys<>();
+    public final Keys<GroupKey.ExceptionType> exceptionTypes = new Keys<>();
+
+    private int[] inputShape = new int[INITIAL_ROWS];
+    private int[] path = new int[INITIAL_ROWS];
+    private int[] outputShape = new int[INITIAL_ROWS];
+    private int[] exceptionType = new int[INITIAL_ROWS];
+    private double[] inputSize = new double[INITIAL_ROWS];
+    private double[] outputSize = new double[INITIAL_ROWS];
+    private int rows = 0;
+    private int[] free = new int[0];
+    private int freeCount = 0;
+
+    // Extracts the features of a run and returns its row. Its trace must
+    // already be in the pool.
+    public int add(RunResult result, Pool pool) {
+        int row;
+        if (freeCount > 0) {
+            row = free[--freeCount];
+        } else {
+            if (rows == inputShape.length) {
+                grow();
+            }
+            row = rows++;
+        }
+        inputShape[row] = inputShapes.intern(GroupKey.InputShape.from(result.getArgs(), result.getUniverse()));
+        path[row] = paths.intern(GroupKey.PathHash.from(result.getTrace(), pool));
+        outputShape[row] = outputShapes.intern(GroupKey.OutputShape.from(result.getTrace()));
+        exceptionType[row] = exceptionTypes.intern(GroupKey.ExceptionType.from(result.getTrace()));
+        inputSize[row] = inputSize(result);
+        outputSize[row] = outputSize(result);
+        return row;
+    }
+
+    // Frees a row for a later run. Interned keys stay.
+    public void release(int row) {
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, Math.max(16, free.length * 2));
+        }
+        free[freeCount++] = row;
+    }
+
+    public void clear() {
+        inputShapes.clear();
+        paths.clear();
+        outputShapes.clear();
+        exceptionTypes.clear();
+        rows = 0;
+        freeCount = 0;
+    }
+
+    // The id of a key in the dictionary of its kind, or -1 for kinds that
+    // aren't interned and keys that weren't seen.
+    public int idOf(GroupKey key) {
+        return switch (key) {
+            case GroupKey.InputShape k -> inputShapes.idOf(k);
+            case GroupKey.PathHash k -> paths.idOf(k);
+            case GroupKey.OutputShape k -> outputShapes.idOf(k);
+            case GroupKey.ExceptionType k -> exceptionTypes.idOf(k);
+            case GroupKey.Generic k -> -1;
+            case GroupKey.Composite k -> -1;
+        };
+    }
+
+    public int inputShape(int row) {
+        return inputShape[row];
+    }
+
+    public int path(int row) {
+        return path[row];
+    }
+
+    public int outputShape(int row) {
+        return outputShape[row];
+    }
+
+    public int exceptionType(int row) {
+        return exceptionType[row];
+    }
+
+    // Sizes of the arguments and of the returned value, see inputSize and
+    // outputSize.
+    public double inputSize(int row) {
+        return inputSize[row];
+    }
+
+    public double outputSize(int row) {
+        return outputSize[row];
+    }
+
+    private void grow() {
+        var capacity = inputShape.length * 2;
+        inputShape = Arrays.copyOf(inputShape, capacity);
+        path = Arrays.copyOf(path, capacity);
+        outputShape = Arrays.copyOf(outputShape, capacity);
+        exceptionType = Arrays.copyOf(exceptionType, capacity);
+        inputSize = Arrays.copyOf(inputSize, capacity);
+        outputSize = Arrays.copyOf(outputSize, capacity);
+    }
+
+    // Digits of numbers, characters of strings and keys, and elements of
+    // arrays, summed over all arguments.
+    private static double inputSize(RunResult result) {
+        var visited = new HashSet<Integer>();
+        var size = 0.0;
+        for (Value arg : result.getArgs()) {
+            size += valueSize(arg, result.getUniverse(), visited);
+        }
+        return size;
+    }
+
+    private static double valueSize(Value val, Universe universe, Set<Integer> visited) {
+        if (val == null) {
+            return 0.0;
+        }
+        return switch (val) {
+            case Value.Null n -> 0.0;
+            case Value.Boolean b -> 0.0;
+            case Value.Int num -> {
+                // Avoid log10(0) which returns -Infinity and log10 of negative numbers is NaN
+                int absValue = Math.max(Math.abs(num.value()), 1);
+                yield Math.log10(absValue);
+            }
+            case Value.Double num -> {
+                // Avoid log10(0) which returns -Infinity and log10 of negative numbers is NaN
+                // and also for very small numbers
+                if (Double.isNaN(num.value()) || Double.isInfinite(num.value())) {
+                    yield 1.0;
+                }
+                double absValue = Math.max(Math.abs(num.value()), 1.0);
+                yield Math.log10(absValue);
+            }
+            case Value.StringValue s -> (double) s.value().length();
+            case Value.ObjectValue objVal -> {
+                var obj = universe.get(objVal.id());
+                if (obj == null || !visited.add(objVal.id().value)) {
+                    yield 1.0;
+                }
+                double sum = obj.members.entrySet().stream()
+                        .mapToDouble(e -> e.getKey().length() + valueSize(e.getValue(), universe, visited))
+                        .sum();
+                visited.remove(objVal.id().value);
+                yield sum;
+            }
+            case Value.ArrayValue arrVal -> {
+                var arr = universe.get(arrVal.id());
+                if (arr == null || !visited.add(arrVal.id().value)) {
+                    yield 1.0;
+                }
+                double sum = 1.0 + arr.elements.values().stream()
+                        .mapToDouble(e -> valueSize(e, universe, visited))
+                        .sum();
+                visited.remove(arrVal.id().value);
+                yield sum;
+            }
+        };
+    }
+
+    // Characters of the returned value, 0 for crashes and timeouts.
+    private static double outputSize(RunResult result) {
+        if (result.getOutput() instanceof Runner.FunctionResult.Normal n && n.value() != null) {
+            return n.value().length();
+        }
+        return 0.0;
+    }
+}
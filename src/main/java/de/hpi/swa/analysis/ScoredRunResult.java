@@ -6,6 +6,7 @@ import de.hpi.swa.generator.Universe;
 import de.hpi.swa.analysis.grouping.GroupKey;
 import de.hpi.swa.generator.Trace;
 
+import java.util.List;
 import java.util.Map;
 
 public record ScoredRunResult(
@@ -19,8 +20,8 @@ public record ScoredRunResult(
         return new ScoredRunResult(result, score, itemScores, groupScores, key);
     }
 
-    public Value input() {
-        return result.getInput();
+    public List<Value> args() {
+        return result.getArgs();
     }
 
     public Universe universe() {
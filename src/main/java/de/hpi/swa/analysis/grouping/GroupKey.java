@@ -8,6 +8,7 @@ import de.hpi.swa.generator.Universe;
 import de.hpi.swa.generator.Trace;
 import de.hpi.swa.generator.Trace.Return;
 import de.hpi.swa.generator.Trace.Crash;
+import de.hpi.swa.generator.Trace.Timeout;
 import de.hpi.swa.generator.Pool;
 import de.hpi.swa.generator.Shape;
 
@@ -15,8 +16,8 @@ public sealed interface GroupKey {
 
     record InputShape(Shape shape) implements GroupKey {
 
-        public static InputShape from(Value value, Universe universe) {
-            var shape = Shape.fromValue(value, universe);
+        public static InputShape from(List<Value> args, Universe universe) {
+            var shape = Shape.fromArgs(args, universe);
             return new InputShape(shape);
         }
 
@@ -52,6 +53,9 @@ public sealed interface GroupKey {
             if (last instanceof Crash) {
                 return new OutputShape("crash");
             }
+            if (last instanceof Timeout) {
+                return new OutputShape("timeout");
+            }
             return new OutputShape("void");
         }
 
@@ -74,6 +78,9 @@ public sealed interface GroupKey {
                 }
                 return new ExceptionType(msg);
             }
+            if (last instanceof Timeout) {
+                return new ExceptionType("Timeout");
+            }
             return new ExceptionType("None");
         }
 
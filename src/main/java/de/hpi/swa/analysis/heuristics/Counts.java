@@ -0,0 +1,32 @@
+package de.hpi.swa.analysis.heuristics;
+
+import java.util.Arrays;
+
+// Counts by dense id, see FeatureTable.Keys.
+class Counts {
+
+    private int[] counts = new int[16];
+    private int size = 0;
+
+    void increment(int id) {
+        if (id >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(counts.length * 2, id + 1));
+        }
+        counts[id]++;
+        size = Math.max(size, id + 1);
+    }
+
+    int get(int id) {
+        return id < size ? counts[id] : 0;
+    }
+
+    // One more than the highest id counted so far.
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(counts, 0, size, 0);
+        size = 0;
+    }
+}
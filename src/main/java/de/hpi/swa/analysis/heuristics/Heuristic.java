@@ -1,36 +1,63 @@
 package de.hpi.swa.analysis.heuristics;
 
+import de.hpi.swa.analysis.FeatureTable;
 import de.hpi.swa.analysis.grouping.GroupKey;
-import de.hpi.swa.generator.Runner.RunResult;
-
-import java.util.List;
-import de.hpi.swa.generator.Pool;
 
 public interface Heuristic {
 
     interface KeyHeuristic<K extends GroupKey> {
         /**
          * Heuristics on key level like input shape, path hash or output shape.
-         * Heuristics aim to maximize scores.
+         * Heuristics aim to maximize scores. The key is given by its id in the
+         * dictionary of its kind in the feature table.
          */
-        double score(K key);
+        double score(FeatureTable features, int id);
 
         String getName();
 
-        default void prepare(List<RunResult> results, Pool pool) {
+        /**
+         * Forgets all runs, before a new analysis.
+         */
+        default void reset() {
+        }
+
+        /**
+         * Adds the run in this row of the feature table to the statistics. Scores
+         * reflect all runs accepted since the last reset.
+         */
+        default void accept(FeatureTable features, int row) {
         }
     }
 
     interface ItemHeuristic {
         /**
          * Heuristics on item level like minimal input or minimal output.
-         * Heuristics aim to maximize scores.
+         * Heuristics aim to maximize scores. The item is given by its row in the
+         * feature table.
          */
-        double score(RunResult item);
+        double score(FeatureTable features, int row);
 
         String getName();
 
-        default void prepare(List<RunResult> results, Pool pool) {
+        /**
+         * Forgets all runs, before a new analysis.
+         */
+        default void reset() {
+        }
+
+        /**
+         * Adds the run in this row of the feature table to the statistics. Scores
+         * reflect all runs accepted since the last reset.
+         */
+        default void accept(FeatureTable features, int row) {
+        }
+
+        /**
+         * Counts the changes to the statistics that scores depend on. The score
+         * of a row stays the same as long as this does.
+         */
+        default long changes() {
+            return 0;
         }
     }
 }
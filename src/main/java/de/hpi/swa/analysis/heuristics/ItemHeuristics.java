@@ -1,12 +1,6 @@
 package de.hpi.swa.analysis.heuristics;
 
-import de.hpi.swa.generator.Runner.RunResult;
-import de.hpi.swa.generator.Value;
-
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import de.hpi.swa.analysis.FeatureTable;
 
 public class ItemHeuristics {
 
@@ -15,61 +9,34 @@ public class ItemHeuristics {
         private final Normalizer.NormalizationStrategy normalizer = new Normalizer.MinMaxNormalization();
 
         @Override
-        public void prepare(java.util.List<RunResult> results, de.hpi.swa.generator.Pool pool) {
-            List<Double> scores = new ArrayList<>();
-            for (RunResult result : results) {
-                scores.add(scoreUnnormalized(result));
-            }
-            normalizer.prepare(scores);
+        public void reset() {
+            normalizer.reset();
+        }
+
+        @Override
+        public void accept(FeatureTable features, int row) {
+            normalizer.accept(scoreUnnormalized(features, row));
         }
 
         @Override
-        public double score(RunResult item) {
-            return normalizer.normalize(scoreUnnormalized(item));
+        public double score(FeatureTable features, int row) {
+            return normalizer.normalize(scoreUnnormalized(features, row));
         }
 
-        private double scoreUnnormalized(RunResult item) {
+        @Override
+        public long changes() {
+            return normalizer.changes();
+        }
+
+        private double scoreUnnormalized(FeatureTable features, int row) {
             // Invert because the smaller the size, the better the score should be
-            return -calculateSize(item.getInput(), item.getUniverse(), new HashSet<>());
+            return -features.inputSize(row);
         }
 
         @Override
         public String getName() {
             return "Minimal Input";
         }
-
-        private double calculateSize(Value val, de.hpi.swa.generator.Universe universe, Set<Integer> visited) {
-            if (val == null) {
-                return 0.0;
-            }
-            return switch (val) {
-                case Value.Null n -> 0.0;
-                case Value.Boolean b -> 0.0;
-                case Value.Int num -> {
-                    // Avoid log10(0) which returns -Infinity and log10 of negative numbers is NaN
-                    int absValue = Math.max(Math.abs(num.value()), 1);
-                    yield Math.log10(absValue);
-                }
-                case Value.Double num -> {
-                    // Avoid log10(0) which returns -Infinity and log10 of negative numbers is NaN
-                    // and also for very small numbers
-                    double absValue = Math.max(Math.abs(num.value()), 1.0);
-                    yield Math.log10(absValue);
-                }
-                case Value.StringValue s -> (double) s.value().length();
-                case Value.ObjectValue objVal -> {
-                    var obj = universe.get(objVal.id());
-                    if (obj == null || !visited.add(objVal.id().value)) {
-                        yield 1.0;
-                    }
-                    double sum = obj.members.entrySet().stream()
-                            .mapToDouble(e -> e.getKey().length() + calculateSize(e.getValue(), universe, visited))
-                            .sum();
-                    visited.remove(objVal.id().value);
-                    yield sum;
-                }
-            };
-        }
     }
 
     public static class MinimalOutput implements Heuristic.ItemHeuristic {
@@ -77,26 +44,28 @@ public class ItemHeuristics {
         private final Normalizer.NormalizationStrategy normalizer = new Normalizer.MinMaxNormalization();
 
         @Override
-        public void prepare(java.util.List<RunResult> results, de.hpi.swa.generator.Pool pool) {
-            List<Double> scores = new ArrayList<>();
-            for (RunResult result : results) {
-                scores.add(scoreUnnormalized(result));
-            }
-            normalizer.prepare(scores);
+        public void reset() {
+            normalizer.reset();
+        }
+
+        @Override
+        public void accept(FeatureTable features, int row) {
+            normalizer.accept(scoreUnnormalized(features, row));
+        }
+
+        @Override
+        public double score(FeatureTable features, int row) {
+            return normalizer.normalize(scoreUnnormalized(features, row));
         }
 
         @Override
-        public double score(RunResult item) {
-            return normalizer.normalize(scoreUnnormalized(item));
+        public long changes() {
+            return normalizer.changes();
         }
 
-        private double scoreUnnormalized(RunResult item) {
+        private double scoreUnnormalized(FeatureTable features, int row) {
             // Invert because the smaller the size, the better the score should be
-            if (item.getOutput() instanceof de.hpi.swa.generator.Runner.FunctionResult.Normal n && n.value() != null) {
-                return -n.value().length();
-            } else {
-                return 0.0;
-            }
+            return -features.outputSize(row);
         }
 
         @Override
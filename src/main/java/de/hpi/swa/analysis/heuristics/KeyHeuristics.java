@@ -1,12 +1,11 @@
 package de.hpi.swa.analysis.heuristics;
 
+import de.hpi.swa.analysis.FeatureTable;
 import de.hpi.swa.analysis.grouping.GroupKey;
 import de.hpi.swa.generator.Shape;
-import de.hpi.swa.generator.Pool;
-import de.hpi.swa.generator.Runner.RunResult;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,6 +15,11 @@ public class KeyHeuristics {
     public static class InputShapeSimplicity implements Heuristic.KeyHeuristic<GroupKey.InputShape> {
         /* Simpler input shapes are easier to display and understand. */
         private final Normalizer.NormalizationStrategy normalizer = new Normalizer.MinMaxNormalization();
+        // Complexities by input shape id, computed once per shape when its
+        // first run is accepted, so that scoring only reads them and can run
+        // concurrently.
+        private int[] complexities = new int[16];
+        private int known = 0;
 
         @Override
         public String getName() {
@@ -23,22 +27,36 @@ public class KeyHeuristics {
         }
 
         @Override
-        public void prepare(List<RunResult> results, Pool pool) {
-            List<Double> scores = new ArrayList<>();
-            for (RunResult r : results) {
-                GroupKey.InputShape key = GroupKey.InputShape.from(r.getInput(), r.getUniverse());
-                scores.add(scoreUnnormalized(key));
-            }
-            normalizer.prepare(scores);
+        public void reset() {
+            normalizer.reset();
+            known = 0;
         }
 
         @Override
-        public double score(GroupKey.InputShape key) {
-            return normalizer.normalize(scoreUnnormalized(key));
+        public void accept(FeatureTable features, int row) {
+            var id = features.inputShape(row);
+            computeComplexities(features, id);
+            normalizer.accept(scoreUnnormalized(id));
+        }
+
+        @Override
+        public double score(FeatureTable features, int id) {
+            return normalizer.normalize(scoreUnnormalized(id));
+        }
+
+        private double scoreUnnormalized(int id) {
+            return -1.0 * complexities[id]; // Invert to maximize score for simpler shapes
         }
 
-        private double scoreUnnormalized(GroupKey.InputShape key) {
-            return -1.0 * calculateComplexity(key.shape()); // Invert to maximize score for simpler shapes
+        private void computeComplexities(FeatureTable features, int id) {
+            if (id >= complexities.length) {
+                complexities = Arrays.copyOf(complexities, Math.max(complexities.length * 2, id + 1));
+            }
+            // Ids are dense, so all shapes up to this one are computed.
+            while (known <= id) {
+                complexities[known] = calculateComplexity(features.inputShapes.get(known).shape());
+                known++;
+            }
         }
 
         private int calculateComplexity(Shape shape) {
@@ -50,6 +68,18 @@ public class KeyHeuristics {
                     size += 2 * calculateComplexity(memberShape);
                 }
                 return 1 + size;
+            } else if (shape instanceof Shape.ArgumentsShape argsShape) {
+                var size = 0;
+                for (Shape argShape : argsShape.args()) {
+                    size += calculateComplexity(argShape);
+                }
+                return size;
+            } else if (shape instanceof Shape.ArrayShape arrShape) {
+                var size = 0;
+                for (Shape elementShape : arrShape.elements()) {
+                    size += 2 * calculateComplexity(elementShape);
+                }
+                return 1 + size;
             } else {
                 return 1;
             }
@@ -62,7 +92,10 @@ public class KeyHeuristics {
          * cases.
          */
 
-        private final Map<GroupKey.InputShape, Double> variances = new HashMap<>();
+        // Counts are kept while fuzzing, variances are only computed when scoring.
+        // Output shape counts by input shape id
+        private final List<Counts> inputOutputCounts = new ArrayList<>();
+        private final Counts inputCounts = new Counts();
 
         @Override
         public String getName() {
@@ -70,43 +103,51 @@ public class KeyHeuristics {
         }
 
         @Override
-        public void prepare(List<RunResult> results, Pool pool) {
-            Map<GroupKey.InputShape, Map<GroupKey.OutputShape, Integer>> inputOutputCounts = new HashMap<>();
-            Map<GroupKey.InputShape, Integer> inputCounts = new HashMap<>();
-
-            for (RunResult r : results) {
-                GroupKey.InputShape is = GroupKey.InputShape.from(r.getInput(), r.getUniverse());
-                GroupKey.OutputShape os = GroupKey.OutputShape.from(r.getTrace());
-
-                inputOutputCounts.computeIfAbsent(is, k -> new HashMap<>()).merge(os, 1, Integer::sum);
-                inputCounts.merge(is, 1, Integer::sum);
-            }
+        public void reset() {
+            inputOutputCounts.clear();
+            inputCounts.clear();
+        }
 
-            for (GroupKey.InputShape inputShape : inputOutputCounts.keySet()) {
-                variances.put(inputShape, calculateOutputDiversity(
-                        inputOutputCounts.getOrDefault(inputShape, Map.of()).values(),
-                        inputCounts.getOrDefault(inputShape, 0)));
+        @Override
+        public void accept(FeatureTable features, int row) {
+            int is = features.inputShape(row);
+            while (inputOutputCounts.size() <= is) {
+                inputOutputCounts.add(new Counts());
             }
+            inputOutputCounts.get(is).increment(features.outputShape(row));
+            inputCounts.increment(is);
         }
 
         @Override
-        public double score(GroupKey.InputShape key) {
-            if (variances.containsKey(key)) {
+        public double score(FeatureTable features, int id) {
+            if (id >= 0 && id < inputOutputCounts.size()) {
                 // numbers between 0 and 1 can have a maximum variance of 0.25
                 double normalizationFactor = 4;
-                return variances.get(key) * normalizationFactor;
+                return variance(id) * normalizationFactor;
             } else {
                 return 0.5;
             }
         }
 
-        public void print() {
-            for (var entry : variances.entrySet()) {
-                System.out.println("InputShapeDiversity - InputShape: " + entry.getKey() + " Variance: " + entry.getValue());
+        public void print(FeatureTable features) {
+            for (int id = 0; id < inputOutputCounts.size(); id++) {
+                System.out.println("InputShapeDiversity - InputShape: " + features.inputShapes.get(id) + " Variance: "
+                        + variance(id));
+            }
+        }
+
+        private double variance(int inputShape) {
+            var outputCounts = inputOutputCounts.get(inputShape);
+            var N_i = new ArrayList<Integer>();
+            for (int os = 0; os < outputCounts.size(); os++) {
+                if (outputCounts.get(os) > 0) {
+                    N_i.add(outputCounts.get(os));
+                }
             }
+            return calculateOutputDiversity(N_i, inputCounts.get(inputShape));
         }
 
-        private double calculateOutputDiversity(Collection<Integer> N_i, Integer N) {
+        private double calculateOutputDiversity(List<Integer> N_i, int N) {
             if (N == 0 || N_i.isEmpty())
                 return 0.0;
 
@@ -133,7 +174,10 @@ public class KeyHeuristics {
          * but some succeed are interesting edge cases and should be scored highly.
          */
 
-        private final Map<GroupKey.InputShape, Double> scores = new HashMap<>();
+        // Counts are kept while fuzzing, scores are only computed when scoring.
+        // Both by input shape id
+        private final Counts crashCounts = new Counts();
+        private final Counts totalCounts = new Counts();
 
         @Override
         public String getName() {
@@ -141,44 +185,37 @@ public class KeyHeuristics {
         }
 
         @Override
-        public void prepare(List<RunResult> results, Pool pool) {
-            Map<GroupKey.InputShape, Map<GroupKey.OutputShape, Integer>> inputOutputCounts = new HashMap<>();
-            Map<GroupKey.InputShape, Integer> inputCounts = new HashMap<>();
-
-            for (RunResult r : results) {
-                GroupKey.InputShape is = GroupKey.InputShape.from(r.getInput(), r.getUniverse());
-                GroupKey.OutputShape os = GroupKey.OutputShape.from(r.getTrace());
+        public void reset() {
+            crashCounts.clear();
+            totalCounts.clear();
+        }
 
-                inputOutputCounts.computeIfAbsent(is, k -> new HashMap<>()).merge(os, 1, Integer::sum);
-                inputCounts.merge(is, 1, Integer::sum);
-            }
+        @Override
+        public void accept(FeatureTable features, int row) {
+            int is = features.inputShape(row);
+            GroupKey.OutputShape os = features.outputShapes.get(features.outputShape(row));
 
-            for (GroupKey.InputShape inputShape : inputOutputCounts.keySet()) {
-                scores.put(inputShape, calculateScore(inputOutputCounts.get(inputShape)));
+            if (os.value().equals("crash")) {
+                crashCounts.increment(is);
             }
+            totalCounts.increment(is);
         }
 
         @Override
-        public double score(GroupKey.InputShape key) {
-            return scores.getOrDefault(key, 0.5);
+        public double score(FeatureTable features, int id) {
+            return id < 0 || totalCounts.get(id) == 0 ? 0.5 : calculateScore(id);
         }
 
-        public void print() {
-            for (var entry : scores.entrySet()) {
-                System.out.println("InputValidity - InputShape: " + entry.getKey() + " Score: " + entry.getValue());
+        public void print(FeatureTable features) {
+            for (int id = 0; id < totalCounts.size(); id++) {
+                System.out.println("InputValidity - InputShape: " + features.inputShapes.get(id) + " Score: "
+                        + calculateScore(id));
             }
         }
 
-        private double calculateScore(Map<GroupKey.OutputShape, Integer> outputCounts) {
-            int crashCount = 0;
-            int totalCount = 0;
-            for (GroupKey.OutputShape os : outputCounts.keySet()) {
-                int count = outputCounts.get(os);
-                if (os.value().equals("crash")) {
-                    crashCount += count;
-                }
-                totalCount += count;
-            }
+        private double calculateScore(int inputShape) {
+            int crashCount = crashCounts.get(inputShape);
+            int totalCount = totalCounts.get(inputShape);
             if (crashCount == 0) {
                 return 0.5;
             } else if (crashCount == totalCount) {
@@ -200,18 +237,18 @@ public class KeyHeuristics {
         }
 
         @Override
-        public void prepare(List<RunResult> results, Pool pool) {
-            List<Double> pathLengths = new ArrayList<>();
-            for (RunResult r : results) {
-                GroupKey.PathHash ph = GroupKey.PathHash.from(r.getTrace(), pool);
-                pathLengths.add(calculateSimplicity(ph));
-            }
-            normalizer.prepare(pathLengths);
+        public void reset() {
+            normalizer.reset();
         }
 
         @Override
-        public double score(GroupKey.PathHash key) {
-            return normalizer.normalize(calculateSimplicity(key));
+        public void accept(FeatureTable features, int row) {
+            normalizer.accept(calculateSimplicity(features.paths.get(features.path(row))));
+        }
+
+        @Override
+        public double score(FeatureTable features, int id) {
+            return normalizer.normalize(calculateSimplicity(features.paths.get(id)));
         }
 
         private double calculateSimplicity(GroupKey.PathHash key) {
@@ -225,8 +262,11 @@ public class KeyHeuristics {
          * We uniformly debias over input shapes to remove fuzzer bias.
          */
 
-        private final Map<GroupKey.InputShape, Integer> inputCounts = new HashMap<>();
-        private final Map<GroupKey.PathHash, Map<GroupKey.InputShape, Integer>> pathInputCounts = new HashMap<>();
+        // By input shape id, and by path id and input shape id. Paths only
+        // meet few of the input shapes, so their counts are sparse.
+        private final Counts inputCounts = new Counts();
+        private final List<Map<Integer, Integer>> pathInputCounts = new ArrayList<>();
+        private int shapeCount = 0; // |S|
 
         @Override
         public String getName() {
@@ -234,36 +274,45 @@ public class KeyHeuristics {
         }
 
         @Override
-        public void prepare(List<RunResult> results, Pool pool) {
+        public void reset() {
             inputCounts.clear();
             pathInputCounts.clear();
+            shapeCount = 0;
+        }
 
-            for (RunResult r : results) {
-                GroupKey.InputShape is = GroupKey.InputShape.from(r.getInput(), r.getUniverse());
-                GroupKey.PathHash ph = GroupKey.PathHash.from(r.getTrace(), pool);
+        @Override
+        public void accept(FeatureTable features, int row) {
+            int is = features.inputShape(row);
+            int ph = features.path(row);
 
-                inputCounts.merge(is, 1, Integer::sum);
+            if (inputCounts.get(is) == 0) {
+                shapeCount++;
+            }
+            inputCounts.increment(is);
 
-                pathInputCounts.computeIfAbsent(ph, k -> new HashMap<>()).merge(is, 1, Integer::sum);
-            }         
+            while (pathInputCounts.size() <= ph) {
+                pathInputCounts.add(new HashMap<>());
+            }
+            pathInputCounts.get(ph).merge(is, 1, Integer::sum);
         }
 
         @Override
-        public double score(GroupKey.PathHash key) {
+        public double score(FeatureTable features, int id) {
             // It's already a probability between 0 and 1, so no normalization needed
-            return calculateCoverageRarity(key);
+            return calculateCoverageRarity(id);
         }
 
-        public void print() {
-            for (var entry : pathInputCounts.entrySet()) {
-                System.out.println("CoverageRarity - PathHash: " + entry.getKey() + " InputCounts: ");
-                for (var innerEntry : entry.getValue().entrySet()) {
-                    System.out.println("    " + innerEntry.getKey() + ": " + innerEntry.getValue());
+        public void print(FeatureTable features) {
+            for (int id = 0; id < pathInputCounts.size(); id++) {
+                System.out.println("CoverageRarity - PathHash: " + features.paths.get(id) + " InputCounts: ");
+                for (var innerEntry : pathInputCounts.get(id).entrySet()) {
+                    System.out.println("    " + features.inputShapes.get(innerEntry.getKey()) + ": "
+                            + innerEntry.getValue());
                 }
             }
         }
 
-        private double calculateCoverageRarity(GroupKey.PathHash path) {
+        private double calculateCoverageRarity(int path) {
             /*
              * Paths that are hit rarely across all input shapes get higher scores.
              * We debias over input shapes to account for fuzzer biasing certain shapes.
@@ -277,18 +326,15 @@ public class KeyHeuristics {
              */
 
             double sum = 0.0; // Σ_s P(path|input shape=s)
-            int shapeCount = 0; // |S|
 
-            var inputCountsOfCurrentPath = pathInputCounts.getOrDefault(path, Map.of());
-            for (GroupKey.InputShape is : inputCounts.keySet()) {
-                int inputCount = inputCounts.getOrDefault(is, 0);
-                if (inputCount == 0)
-                    continue;
-
-                int inputPathCount = inputCountsOfCurrentPath.getOrDefault(is, 0);
+            // Shapes that never hit the path add nothing to the sum.
+            var inputCountsOfCurrentPath = path >= 0 && path < pathInputCounts.size() ? pathInputCounts.get(path)
+                    : Map.<Integer, Integer>of();
+            for (var entry : inputCountsOfCurrentPath.entrySet()) {
+                int inputCount = inputCounts.get(entry.getKey());
+                int inputPathCount = entry.getValue();
 
                 sum += (double) inputPathCount / inputCount; // P(path|input shape=s)
-                shapeCount++;
             }
 
             if (shapeCount == 0)
@@ -1,41 +1,75 @@
 package de.hpi.swa.analysis.heuristics;
 
-import java.util.Collections;
 import java.util.List;
 
 public class Normalizer {
 
     public interface NormalizationStrategy {
-        void prepare(List<Double> values);
+        // Starts over, forgetting all values.
+        void reset();
+
+        // Adds a value to the range that is normalized to.
+        void accept(double value);
+
+        default void prepare(List<Double> values) {
+            reset();
+            for (double value : values) {
+                accept(value);
+            }
+        }
 
         double normalize(double value);
+
+        // Counts the changes of the range, so that values normalized earlier
+        // can be told to be outdated.
+        long changes();
     }
 
     public static class MinMaxNormalization implements NormalizationStrategy {
         /*
          * Problems:
          * - If max == min, all values are the same. We can return 1.0 in this case so
-         *   it is still multipliable by a factor.
+         *   it is still multipliable by a factor. The same goes for no values at all.
          * 
-         * - If new values outside the prepared range are given, normalization will
+         * - If new values outside the accepted range are given, normalization will
          *   produce values < 0 or > 1.
-         *   For now we will not pass values after preparation that are outside the range.
+         *   For now we will not pass values that were not accepted before.
          */
-        private double min;
-        private double max;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private long changes = 0;
+
+        @Override
+        public void reset() {
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            changes++;
+        }
 
+        // A running minimum and maximum, so that values can be added one by
+        // one while fuzzing.
         @Override
-        public void prepare(List<Double> values) {
-            this.min = Collections.min(values);
-            this.max = Collections.max(values);
+        public void accept(double value) {
+            var newMin = Math.min(min, value);
+            var newMax = Math.max(max, value);
+            if (Double.compare(newMin, min) != 0 || Double.compare(newMax, max) != 0) {
+                changes++;
+            }
+            min = newMin;
+            max = newMax;
         }
 
         @Override
         public double normalize(double value) {
-            if (max == min) {
+            if (!(max > min)) {
                 return 1.0;
             }
             return (value - min) / (max - min);
         }
+
+        @Override
+        public long changes() {
+            return changes;
+        }
     }
-}
\ No newline at end of file
+}
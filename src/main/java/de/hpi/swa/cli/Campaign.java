@@ -0,0 +1,293 @@
+package de.hpi.swa.cli;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BooleanSupplier;
+
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+
+import de.hpi.swa.analysis.AnalysisEngine;
+import de.hpi.swa.analysis.grouping.GroupKey;
+import de.hpi.swa.analysis.grouping.GroupingStrategy;
+import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.cli.logger.ResultLogger;
+import de.hpi.swa.coverage.Coverage;
+import de.hpi.swa.coverage.CoverageInstrument;
+import de.hpi.swa.generator.ContextPool;
+import de.hpi.swa.generator.InterestingValues;
+import de.hpi.swa.generator.MemberModel;
+import de.hpi.swa.generator.Pool;
+import de.hpi.swa.generator.Runner;
+import de.hpi.swa.generator.Seeds;
+import de.hpi.swa.generator.Watchdog;
+
+// Fuzzes the function a source evaluates to and analyzes the results. The
+// engine can be reused across campaigns, so that parsed and compiled code of
+// the language and of the source under test is shared.
+public class Campaign {
+
+    // Which runs are passed to the logger. Novel runs covered new code or
+    // produced a new kind of output. Sampling keeps the novel runs and a
+    // random share of the others. The analysis always sees all runs.
+    public enum Emission {
+        ALL, NOVEL, SAMPLED
+    }
+
+    // A campaign stops at whichever limit it reaches first. A maximum of 0
+    // executions, or a null time, means no limit. The plateau limits stop it
+    // once that many executions or that much time passed without new
+    // coverage or a new kind of output. With `statsEvery` above 0, progress
+    // is also reported after every that many executions, and with
+    // `snapshotEvery` above 0, the ranking so far. With `reservoir` above 0,
+    // the analysis keeps only that many of the best runs of each group.
+    public record Options(boolean group, String memberModelPath, Duration timeout, int recycleAfter,
+            int maxExecutions, Duration maxTime, int plateauExecutions, Duration plateauTime,
+            Emission emission, double sampleRate, int statsEvery, int snapshotEvery, int reservoir) {
+
+        public static final int DEFAULT_MAX_EXECUTIONS = 1000;
+        public static final double DEFAULT_SAMPLE_RATE = 0.01;
+
+        public static Options defaults() {
+            return new Options(false, null, Watchdog.DEFAULT_TIMEOUT, ContextPool.DEFAULT_MAX_EXECUTIONS,
+                    DEFAULT_MAX_EXECUTIONS, null, 0, null, Emission.ALL, DEFAULT_SAMPLE_RATE, 0, 0,
+                    AnalysisEngine.UNBOUNDED);
+        }
+    }
+
+    // A point of the coverage timeline. Reported whenever a run found
+    // something new, periodically if asked to, and once at the end.
+    // `emitted` counts the runs passed to the logger.
+    public record Progress(int executions, long millis, int coveredSections, int outputs, int poolSize,
+            int emitted) {
+    }
+
+    // Tracks the limits of a campaign and when something new was found last.
+    private static final class Budget {
+
+        private final Options options;
+        private final long start = System.nanoTime();
+        private int executions = 0;
+        private int lastNewExecution = 0;
+        private long lastNewNanos = start;
+
+        Budget(Options options) {
+            this.options = options;
+        }
+
+        void observe(boolean somethingNew) {
+            executions++;
+            if (somethingNew) {
+                lastNewExecution = executions;
+                lastNewNanos = System.nanoTime();
+            }
+        }
+
+        long millis() {
+            return (System.nanoTime() - start) / 1_000_000;
+        }
+
+        // Why the campaign should stop, or null if it may go on.
+        String exhausted() {
+            var now = System.nanoTime();
+            if (options.maxExecutions() > 0 && executions >= options.maxExecutions()) {
+                return "reached " + options.maxExecutions() + " executions";
+            }
+            if (options.maxTime() != null && now - start >= options.maxTime().toNanos()) {
+                return "reached the time limit of " + options.maxTime().toSeconds() + "s";
+            }
+            if (options.plateauExecutions() > 0 && executions - lastNewExecution >= options.plateauExecutions()) {
+                return "nothing new in " + options.plateauExecutions() + " executions";
+            }
+            if (options.plateauTime() != null && now - lastNewNanos >= options.plateauTime().toNanos()) {
+                return "nothing new in " + options.plateauTime().toSeconds() + "s";
+            }
+            return null;
+        }
+    }
+
+    // Returns the number of executions, or -1 if the source could not be
+    // fuzzed.
+    public static int run(Engine engine, Source source, Options options, ResultLogger logger,
+            BooleanSupplier cancelled) {
+        var instrument = engine.getInstruments().get(CoverageInstrument.ID).lookup(CoverageInstrument.class);
+        if (instrument == null) {
+            throw new IllegalStateException(
+                    "CoverageInstrument not found. Ensure it's on the classpath and correctly registered.");
+        }
+
+        // Mine literals while the source is loaded, before any execution.
+        var seeds = new Seeds();
+        var stopMining = instrument.mineLiterals(source.getName(), seeds);
+
+        System.err.println("Running program.\n");
+
+        ContextPool contexts;
+        try {
+            contexts = new ContextPool(engine, source, options.timeout(), options.recycleAfter());
+        } catch (PolyglotException e) {
+            System.err.println("Error during execution:");
+            FuzzMain.printException(e);
+            stopMining.run();
+            return -1;
+        }
+
+        System.err.println("Mined " + seeds + " from the source.");
+
+        var lease = contexts.acquire();
+        if (lease.function.isNull()) {
+            System.err.println("Returning because the code didn't evaluate to a function:");
+            System.err.println(lease.function);
+            contexts.close();
+            stopMining.run();
+            return -1;
+        }
+
+        var arity = Runner.detectArity(lease);
+        contexts.release(lease);
+        System.err.println("Fuzzing a function with " + arity + (arity == 1 ? " argument." : " arguments."));
+
+        // Learned member preferences, optionally shared across sessions
+        var memberModel = new MemberModel();
+        if (options.memberModelPath() != null) {
+            try {
+                memberModel.load(Path.of(options.memberModelPath()));
+                System.err.println("Loaded member model with " + memberModel.size() + " sites.");
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not load member model, starting from scratch: " + e.getMessage());
+            }
+        }
+
+        // Runs are analyzed while fuzzing.
+        GroupingStrategy groupingStrategy;
+        if (options.group()) {
+            groupingStrategy = new GroupingStrategy.CompositeAllGroups();
+        } else {
+            groupingStrategy = new GroupingStrategy.NoGroups();
+        }
+        // How often boundary values are mixed in, learned from run outcomes
+        var interesting = new InterestingValues();
+        var pool = new Pool(seeds, interesting, memberModel, arity);
+        var analysis = new AnalysisEngine(options.reservoir());
+        analysis.begin(pool, groupingStrategy);
+
+        // Fuzzing loop
+        var random = new Random();
+
+        var budget = new Budget(options);
+        // Kinds of outputs, i.e. return types and exception types
+        var outputs = new HashSet<List<GroupKey>>();
+        // Separate from the fuzzing randomness, so that the emission doesn't
+        // change which inputs are tried.
+        var sampler = new Random();
+        var emitted = 0;
+        String stopReason;
+        while ((stopReason = budget.exhausted()) == null) {
+            if (cancelled.getAsBoolean()) {
+                stopReason = "cancelled";
+                break;
+            }
+            try {
+                lease = contexts.acquire();
+            } catch (PolyglotException e) {
+                System.err.println("Error during execution:");
+                FuzzMain.printException(e);
+                stopReason = "the context could not be rebuilt";
+                break;
+            }
+            var trace = pool.createNewTrace();
+            var coverage = new Coverage();
+            var runLease = lease;
+            var result = instrument.collect(coverage, () -> Runner.run(runLease.function, runLease.watchdog, trace,
+                    random, seeds, interesting, memberModel));
+            contexts.release(lease);
+            var deduplicatedResult = result.withDeduplicatedTrace();
+
+            // Add the entropy and its results to the pool for future selection
+            var coveredBefore = pool.getCoveredSections();
+            var entry = pool.add(result.getTrace(), coverage, result.getNanos());
+            analysis.accept(deduplicatedResult);
+
+            var newOutput = outputs.add(List.of(
+                    GroupKey.OutputShape.from(result.getTrace()),
+                    GroupKey.ExceptionType.from(result.getTrace())));
+            var somethingNew = newOutput || pool.getCoveredSections() > coveredBefore;
+            var emit = switch (options.emission()) {
+                case ALL -> true;
+                case NOVEL -> somethingNew;
+                case SAMPLED -> somethingNew || sampler.nextDouble() < options.sampleRate();
+            };
+            if (emit) {
+                logger.logRun(deduplicatedResult);
+                emitted++;
+            }
+
+            budget.observe(somethingNew);
+            if (budget.executions == 1) {
+                // Unbuffered, unlike the results, so start-up can be timed.
+                System.err.println("Finished the first execution after " + budget.millis() + " ms.");
+            }
+            if (somethingNew || (options.statsEvery() > 0 && budget.executions % options.statsEvery() == 0)) {
+                logger.logProgress(new Progress(budget.executions, budget.millis(), pool.getCoveredSections(),
+                        outputs.size(), pool.size(), emitted));
+            }
+            if (options.snapshotEvery() > 0 && budget.executions % options.snapshotEvery() == 0) {
+                logger.logSnapshot(analysis.snapshot(ResultLogger.REPRESENTATIVES));
+            }
+
+            // Replay new entries to measure their time reliably and to notice
+            // non-deterministic behavior. Replays don't count as executions,
+            // but they take from the time budget.
+            while (entry != null && !entry.isCalibrated() && entry.isStable() && budget.exhausted() == null) {
+                try {
+                    lease = contexts.acquire();
+                } catch (PolyglotException e) {
+                    System.err.println("Error during execution:");
+                    FuzzMain.printException(e);
+                    stopReason = "the context could not be rebuilt";
+                    break;
+                }
+                var replayCoverage = new Coverage();
+                var replayLease = lease;
+                var replay = instrument.collect(replayCoverage, () -> Runner.run(replayLease.function,
+                        replayLease.watchdog, result.getTrace(), random, seeds, interesting, memberModel));
+                entry.calibrate(replay.getTrace(), replayCoverage, replay.getNanos());
+                if (!entry.isStable()) {
+                    // State left behind by earlier runs is a likely cause.
+                    lease.markPolluted();
+                }
+                contexts.release(lease);
+            }
+            if (stopReason != null) {
+                break;
+            }
+        }
+        contexts.close();
+        stopMining.run();
+        logger.logProgress(new Progress(budget.executions, budget.millis(), pool.getCoveredSections(),
+                outputs.size(), pool.size(), emitted));
+        System.err.println("Stopped after " + budget.executions + " executions in " + budget.millis()
+                + " ms: " + stopReason + ".");
+        if (options.emission() != Emission.ALL) {
+            System.err.println("Emitted " + emitted + " of " + budget.executions + " runs.");
+        }
+        System.err.println("Recycled " + contexts.getRecycled() + " contexts.");
+
+        if (options.memberModelPath() != null) {
+            try {
+                memberModel.store(Path.of(options.memberModelPath()));
+            } catch (IOException e) {
+                System.err.println("Could not store member model: " + e.getMessage());
+            }
+        }
+
+        List<ResultGroup> groups = analysis.snapshot(ResultLogger.REPRESENTATIVES);
+        logger.logAnalysis(groups);
+        return budget.executions;
+    }
+}
@@ -0,0 +1,95 @@
+package de.hpi.swa.cli;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+
+// Persists what an engine parsed and compiled while fuzzing, so that the next
+// invocation for the same language doesn't repeat the warm-up of the
+// language's internals and of the code under test. Uses Truffle's auxiliary
+// engine cache: a cold start stores the cache when the engine is closed, a
+// warm start loads it. The cache is only supported in native images, on the
+// JVM engines are created without it.
+public class EngineCache {
+
+    private static final String VERSION = readVersion();
+
+    private final Path file;
+    private boolean storing = false;
+
+    // The cache is keyed by language and fuzzer version, because a cache
+    // stored by another build of the fuzzer can't be loaded.
+    public EngineCache(Path directory, String language) {
+        this.file = directory.resolve(language + "-" + VERSION + ".image");
+    }
+
+    public Engine build(Supplier<Engine.Builder> configuration) {
+        if (Files.isRegularFile(file)) {
+            try {
+                var engine = configuration.get()
+                        .allowExperimentalOptions(true)
+                        .option("engine.CacheLoad", file.toString())
+                        .build();
+                System.err.println("Loaded engine cache " + file + ".");
+                return engine;
+            } catch (IllegalArgumentException | IllegalStateException | PolyglotException e) {
+                System.err.println("Could not load engine cache, rebuilding it: " + e.getMessage());
+                try {
+                    Files.delete(file);
+                } catch (IOException deleteError) {
+                    return configuration.get().build();
+                }
+            }
+        }
+        try {
+            Files.createDirectories(file.getParent());
+            var engine = configuration.get()
+                    .allowExperimentalOptions(true)
+                    .option("engine.CacheStoreEnabled", "true")
+                    .build();
+            storing = true;
+            return engine;
+        } catch (IOException | IllegalArgumentException e) {
+            // Unknown option, e.g. on the JVM.
+            System.err.println("Engine cache not available, continuing without it: " + e.getMessage());
+            return configuration.get().build();
+        }
+    }
+
+    // Closes the engine. After a cold start, it stores the cache first.
+    public void close(Engine engine) {
+        if (storing) {
+            storing = false;
+            try {
+                if (engine.storeCache(file)) {
+                    System.err.println("Stored engine cache " + file + ".");
+                } else {
+                    System.err.println("Could not store engine cache " + file + ".");
+                }
+            } catch (UnsupportedOperationException | IllegalStateException | PolyglotException e) {
+                System.err.println("Could not store engine cache: " + e.getMessage());
+            }
+        }
+        // Closing an engine twice has no effect.
+        engine.close();
+    }
+
+    private static String readVersion() {
+        try (InputStream in = EngineCache.class.getResourceAsStream("/graalfuzz.properties")) {
+            if (in != null) {
+                var properties = new Properties();
+                properties.load(in);
+                return properties.getProperty("version", "dev");
+            }
+        } catch (IOException e) {
+            // Fall through to the default.
+        }
+        return "dev";
+    }
+}
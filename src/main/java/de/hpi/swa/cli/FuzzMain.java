@@ -1,28 +1,35 @@
 package de.hpi.swa.cli;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 
-import org.graalvm.polyglot.Context;
 import org.graalvm.polyglot.Engine;
 import org.graalvm.polyglot.PolyglotException;
 
 import de.hpi.swa.analysis.AnalysisEngine;
-import de.hpi.swa.analysis.grouping.GroupingStrategy;
-import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.cli.logger.AsyncLogger;
+import de.hpi.swa.cli.logger.BinaryLogger;
 import de.hpi.swa.cli.logger.ConsoleLogger;
 import de.hpi.swa.cli.logger.JsonLogger;
 import de.hpi.swa.cli.logger.ResultLogger;
-import de.hpi.swa.coverage.Coverage;
 import de.hpi.swa.coverage.CoverageInstrument;
-import de.hpi.swa.generator.Pool;
-import de.hpi.swa.generator.Runner;
+import de.hpi.swa.generator.ContextPool;
+import de.hpi.swa.generator.Watchdog;
 
 public class FuzzMain {
 
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
     public static void main(String[] args) {
         System.err.println("Welcome to the Fuzzer!");
 
@@ -32,7 +39,24 @@ public class FuzzMain {
         String filePath = null;
         Boolean colorStdOut = true;
         Boolean tooling = false;
+        Boolean binary = false;
+        Boolean delta = false;
         Boolean group = false;
+        String memberModelPath = null;
+        Duration timeout = Watchdog.DEFAULT_TIMEOUT;
+        int recycleAfter = ContextPool.DEFAULT_MAX_EXECUTIONS;
+        Boolean server = false;
+        String engineCachePath = null;
+        var logOverflow = AsyncLogger.Overflow.BLOCK;
+        var emission = Campaign.Emission.ALL;
+        double sampleRate = Campaign.Options.DEFAULT_SAMPLE_RATE;
+        int statsEvery = 0;
+        int snapshotEvery = 0;
+        int reservoir = AnalysisEngine.UNBOUNDED;
+        int maxExecutions = Campaign.Options.DEFAULT_MAX_EXECUTIONS;
+        Duration maxTime = null;
+        int plateauExecutions = 0;
+        Duration plateauTime = null;
         for (int i = 0; i < args.length; i++) {
             String a = args[i];
             if (a.equals("--language") || a.equals("-l")) {
@@ -54,27 +78,112 @@ public class FuzzMain {
                 colorStdOut = false;
             } else if (a.equals("--tooling")) {
                 tooling = true;
+            } else if (a.equals("--binary")) {
+                binary = true;
+            } else if (a.equals("--delta")) {
+                delta = true;
             } else if (a.equals("--group")) {
                 group = true;
+            } else if (a.equals("--server")) {
+                server = true;
+            } else if (a.equals("--member-model")) {
+                if (i + 1 < args.length)
+                    memberModelPath = args[++i];
+            } else if (a.startsWith("--member-model=")) {
+                memberModelPath = a.substring("--member-model=".length());
+            } else if (a.equals("--timeout")) {
+                if (i + 1 < args.length)
+                    timeout = Duration.ofMillis(Long.parseLong(args[++i]));
+            } else if (a.startsWith("--timeout=")) {
+                timeout = Duration.ofMillis(Long.parseLong(a.substring("--timeout=".length())));
+            } else if (a.equals("--recycle-after")) {
+                if (i + 1 < args.length)
+                    recycleAfter = Integer.parseInt(args[++i]);
+            } else if (a.startsWith("--recycle-after=")) {
+                recycleAfter = Integer.parseInt(a.substring("--recycle-after=".length()));
+            } else if (a.equals("--max-execs")) {
+                if (i + 1 < args.length)
+                    maxExecutions = Integer.parseInt(args[++i]);
+            } else if (a.startsWith("--max-execs=")) {
+                maxExecutions = Integer.parseInt(a.substring("--max-execs=".length()));
+            } else if (a.equals("--max-time")) {
+                if (i + 1 < args.length)
+                    maxTime = Duration.ofSeconds(Long.parseLong(args[++i]));
+            } else if (a.startsWith("--max-time=")) {
+                maxTime = Duration.ofSeconds(Long.parseLong(a.substring("--max-time=".length())));
+            } else if (a.equals("--plateau-execs")) {
+                if (i + 1 < args.length)
+                    plateauExecutions = Integer.parseInt(args[++i]);
+            } else if (a.startsWith("--plateau-execs=")) {
+                plateauExecutions = Integer.parseInt(a.substring("--plateau-execs=".length()));
+            } else if (a.equals("--plateau-time")) {
+                if (i + 1 < args.length)
+                    plateauTime = Duration.ofSeconds(Long.parseLong(args[++i]));
+            } else if (a.startsWith("--plateau-time=")) {
+                plateauTime = Duration.ofSeconds(Long.parseLong(a.substring("--plateau-time=".length())));
+            } else if (a.equals("--log-overflow")) {
+                if (i + 1 < args.length)
+                    logOverflow = AsyncLogger.Overflow.valueOf(args[++i].toUpperCase());
+            } else if (a.startsWith("--log-overflow=")) {
+                logOverflow = AsyncLogger.Overflow.valueOf(a.substring("--log-overflow=".length()).toUpperCase());
+            } else if (a.equals("--emit")) {
+                if (i + 1 < args.length)
+                    emission = Campaign.Emission.valueOf(args[++i].toUpperCase());
+            } else if (a.startsWith("--emit=")) {
+                emission = Campaign.Emission.valueOf(a.substring("--emit=".length()).toUpperCase());
+            } else if (a.equals("--sample-rate")) {
+                if (i + 1 < args.length)
+                    sampleRate = Double.parseDouble(args[++i]);
+            } else if (a.startsWith("--sample-rate=")) {
+                sampleRate = Double.parseDouble(a.substring("--sample-rate=".length()));
+            } else if (a.equals("--stats-every")) {
+                if (i + 1 < args.length)
+                    statsEvery = Integer.parseInt(args[++i]);
+            } else if (a.startsWith("--stats-every=")) {
+                statsEvery = Integer.parseInt(a.substring("--stats-every=".length()));
+            } else if (a.equals("--snapshot-every")) {
+                if (i + 1 < args.length)
+                    snapshotEvery = Integer.parseInt(args[++i]);
+            } else if (a.startsWith("--snapshot-every=")) {
+                snapshotEvery = Integer.parseInt(a.substring("--snapshot-every=".length()));
+            } else if (a.equals("--reservoir")) {
+                if (i + 1 < args.length)
+                    reservoir = Integer.parseInt(args[++i]);
+            } else if (a.startsWith("--reservoir=")) {
+                reservoir = Integer.parseInt(a.substring("--reservoir=".length()));
+            } else if (a.equals("--engine-cache")) {
+                if (i + 1 < args.length)
+                    engineCachePath = args[++i];
+            } else if (a.startsWith("--engine-cache=")) {
+                engineCachePath = a.substring("--engine-cache=".length());
             }
         }
 
-        var engine = Engine.newBuilder().option(CoverageInstrument.ID, "true").build();
-        var context = Context.newBuilder().engine(engine).allowAllAccess(true).build();
-        var instrument = engine.getInstruments().get(CoverageInstrument.ID).lookup(CoverageInstrument.class);
+        if (server) {
+            new Server(engineCachePath == null ? null : Path.of(engineCachePath)).serve();
+            return;
+        }
+
+        // Without code, the default python program is fuzzed.
+        if (code == null && filePath == null) {
+            language = "python";
+        }
+        EngineCache engineCache = null;
+        Engine engine;
+        if (engineCachePath != null) {
+            engineCache = new EngineCache(Path.of(engineCachePath), language);
+            engine = engineCache.build(() -> Engine.newBuilder().option(CoverageInstrument.ID, "true"));
+        } else {
+            engine = Engine.newBuilder().option(CoverageInstrument.ID, "true").build();
+        }
 
         // Display available languages
         System.err.print("Available languages:");
-        for (var lang : context.getEngine().getLanguages().keySet()) {
+        for (var lang : engine.getLanguages().keySet()) {
             System.err.print(" " + lang);
         }
         System.err.println();
 
-        if (instrument == null) {
-            throw new IllegalStateException(
-                    "CoverageInstrument not found. Ensure it's on the classpath and correctly registered.");
-        }
-
         // Build source
         org.graalvm.polyglot.Source source;
         try {
@@ -98,60 +207,38 @@ public class FuzzMain {
             return;
         }
 
-        System.err.println("Running program.\n");
-
-        org.graalvm.polyglot.Value function;
-        try {
-            function = context.eval(source);
-        } catch (PolyglotException e) {
-            System.err.println("Error during execution:");
-            FuzzMain.printException(e);
-            return;
-        }
-
-        if (function.isNull()) {
-            System.err.println("Returning because the code didn't evaluate to a function:");
-            System.err.println(function);
-            return;
-        }
-
-        // Output
+        // Output, written on its own thread and flushed in batches
+        Flushable out;
         ResultLogger logger;
-        if (tooling) {
-            logger = new JsonLogger();
+        if (binary) {
+            var stream = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE);
+            logger = new BinaryLogger(stream, delta);
+            out = stream;
+        } else if (tooling) {
+            var writer = new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8),
+                    OUTPUT_BUFFER_SIZE);
+            logger = new JsonLogger(writer, delta);
+            out = writer;
         } else {
-            logger = new ConsoleLogger(colorStdOut);
+            var stream = new PrintStream(
+                    new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE), false,
+                    StandardCharsets.UTF_8);
+            logger = new ConsoleLogger(stream, colorStdOut);
+            out = stream;
         }
 
-        // Fuzzing loop
-        var pool = new Pool();
-        var random = new Random();
-        List<Runner.RunResult> allResults = new ArrayList<>();
-
-        for (int i = 0; i < 1000; i++) {
-            var trace = pool.createNewTrace();
-            instrument.coverage = new Coverage();
-            var result = Runner.run(function, trace, random);
-            var deduplicatedResult = result.withDeduplicatedTrace();
-
-            // Add the entropy and its results to the pool for future selection
-            pool.add(result.getTrace(), instrument.coverage);
-            allResults.add(deduplicatedResult);
-
-            logger.logRun(deduplicatedResult);
+        var options = new Campaign.Options(group, memberModelPath, timeout, recycleAfter, maxExecutions, maxTime,
+                plateauExecutions, plateauTime, emission, sampleRate, statsEvery, snapshotEvery,
+                reservoir);
+        try (var asyncLogger = new AsyncLogger(logger, out, AsyncLogger.DEFAULT_CAPACITY, logOverflow)) {
+            Campaign.run(engine, source, options, asyncLogger, () -> false);
         }
-
-        // Analysis
-        GroupingStrategy groupingStrategy;
-        if (group) {
-            groupingStrategy = new GroupingStrategy.CompositeAllGroups();
+        if (engineCache != null) {
+            engineCache.close(engine);
         } else {
-            groupingStrategy = new GroupingStrategy.NoGroups();
+            engine.close();
         }
-        var analysis = new AnalysisEngine();
-        List<ResultGroup> groups = analysis.analyze(allResults, pool, groupingStrategy);
-
-        logger.logAnalysis(groups);
     }
 
     public static void printException(Exception e) {
@@ -0,0 +1,457 @@
+package de.hpi.swa.cli;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.Source;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.cli.logger.AsyncLogger;
+import de.hpi.swa.cli.logger.ResultLogger;
+import de.hpi.swa.coverage.CoverageInstrument;
+import de.hpi.swa.generator.Runner.RunResult;
+import de.hpi.swa.serialization.GsonConfig;
+import de.hpi.swa.serialization.RunResultAdapter;
+
+// Keeps one warm engine per language and fuzzes functions on request, so that
+// only the first request for a language pays for starting and warming it up.
+// Speaks JSON-RPC 2.0 over stdin and stdout, one message per line.
+//
+// With an engine cache directory, engines start from the cache of an earlier
+// server or CLI run, and store it on shutdown if there was none.
+//
+// Requests:
+// - `initialize` with optional `languages` creates their engines up front and
+//   responds with all available languages.
+// - `fuzz` with `file` or `code` and optionally `language`, `maxExecutions`,
+//   `maxTime`, `plateauExecutions`, `plateauTime`, `timeout` (times in ms),
+//   `recycleAfter`, `group`, `memberModel`, `emission` (`all`, `novel` or
+//   `sampled`), `sampleRate`, `statsEvery`, `snapshotEvery` and `reservoir`.
+//   While fuzzing, `fuzz/run`, `fuzz/progress`, `fuzz/snapshot` and
+//   `fuzz/analysis` notifications carry the results in the same format as
+//   `--tooling`. Responds with the number of executions once done.
+//   Requests are handled one after another. Each needs an id that no queued
+//   or running `fuzz` request has.
+// - `shutdown` stops the running campaign, responds and exits.
+// Notifications:
+// - `$/cancelRequest` with the `id` of a queued or running `fuzz` request
+//   stops it early. It still reports its analysis and responds. Cancels of
+//   other ids are ignored.
+public class Server {
+
+    private static final int PARSE_ERROR = -32700;
+    private static final int INVALID_REQUEST = -32600;
+    private static final int METHOD_NOT_FOUND = -32601;
+    private static final int INVALID_PARAMS = -32602;
+    private static final int FUZZING_FAILED = -32000;
+    private static final int REQUEST_CANCELLED = -32800;
+
+    private final Gson gson = GsonConfig.createGson();
+    private final PrintStream out;
+    // Created by the worker thread when a language is first requested.
+    private final Map<String, Engine> engines = new ConcurrentHashMap<>();
+    private final Path engineCacheDirectory;
+    private final Map<String, EngineCache> engineCaches = new ConcurrentHashMap<>();
+    // Lists the installed languages until an engine for one of them exists.
+    // Only used by the worker thread.
+    private Engine probe = null;
+    // Numbers inline code, so that each request's source has its own name.
+    // Literals are mined from sources by name, and ids can be used again.
+    // Only used by the worker thread.
+    private int inlineSources = 0;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "graalfuzz-campaign");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Whether each queued or running `fuzz` request was cancelled, by id.
+    // Entries are removed when the request completes, so that cancels of
+    // other ids aren't kept and ids can be used again.
+    private final Map<JsonElement, Boolean> fuzzing = new ConcurrentHashMap<>();
+    private volatile boolean shuttingDown = false;
+
+    // The engine cache directory may be null.
+    public Server(Path engineCacheDirectory) {
+        this.engineCacheDirectory = engineCacheDirectory;
+        // Only protocol messages go to stdout. Everything else that the fuzzer
+        // or the code under test prints goes to stderr.
+        // Notifications are flushed in batches by the logger, responses
+        // right away.
+        this.out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false,
+                StandardCharsets.UTF_8);
+        System.setOut(System.err);
+    }
+
+    public void serve() {
+        System.err.println("Serving JSON-RPC on stdio.");
+        var reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                if (!handle(line)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read request: " + e.getMessage());
+        }
+        stop();
+    }
+
+    // Returns false once the server should exit.
+    private boolean handle(String line) {
+        JsonObject message;
+        try {
+            message = JsonParser.parseString(line).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            sendError(JsonNull.INSTANCE, PARSE_ERROR, "Invalid JSON: " + e.getMessage());
+            return true;
+        }
+        var id = message.get("id");
+        var params = message.has("params") && message.get("params").isJsonObject()
+                ? message.getAsJsonObject("params")
+                : new JsonObject();
+        if (!message.has("method")) {
+            sendError(id == null ? JsonNull.INSTANCE : id, INVALID_REQUEST, "Missing method.");
+            return true;
+        }
+        switch (message.get("method").getAsString()) {
+            case "initialize" -> worker.execute(() -> initialize(id, params));
+            case "fuzz" -> {
+                if (id == null) {
+                    sendError(JsonNull.INSTANCE, INVALID_REQUEST, "Fuzzing requires an id.");
+                } else if (fuzzing.putIfAbsent(id, false) != null) {
+                    sendError(id, INVALID_REQUEST, "Request " + id + " is already fuzzing.");
+                } else {
+                    worker.execute(() -> fuzz(id, params));
+                }
+            }
+            case "$/cancelRequest" -> {
+                if (params.has("id")) {
+                    fuzzing.computeIfPresent(params.get("id"), (key, cancelled) -> true);
+                }
+            }
+            case "shutdown" -> {
+                stop();
+                sendResult(id, JsonNull.INSTANCE);
+                return false;
+            }
+            default -> {
+                if (id != null) {
+                    sendError(id, METHOD_NOT_FOUND, "Unknown method " + message.get("method").getAsString());
+                }
+            }
+        }
+        return true;
+    }
+
+    private void initialize(JsonElement id, JsonObject params) {
+        var languages = new JsonArray();
+        try {
+            if (params.has("languages")) {
+                for (var language : params.getAsJsonArray("languages")) {
+                    engine(language.getAsString());
+                }
+            }
+            for (var language : installedLanguages()) {
+                languages.add(language);
+            }
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            sendError(id, INVALID_PARAMS, e.getMessage());
+            return;
+        }
+        var result = new JsonObject();
+        result.add("languages", languages);
+        sendResult(id, result);
+    }
+
+    private void fuzz(JsonElement id, JsonObject params) {
+        try {
+            if (cancelled(id)) {
+                sendError(id, REQUEST_CANCELLED, "Cancelled before it started.");
+                return;
+            }
+            var start = System.nanoTime();
+            var language = params.has("language") ? params.get("language").getAsString() : "python";
+            var source = source(id, language, params);
+            var defaults = Campaign.Options.defaults();
+            var options = new Campaign.Options(
+                    params.has("group") ? params.get("group").getAsBoolean() : defaults.group(),
+                    params.has("memberModel") ? params.get("memberModel").getAsString()
+                            : defaults.memberModelPath(),
+                    params.has("timeout") ? Duration.ofMillis(params.get("timeout").getAsLong())
+                            : defaults.timeout(),
+                    params.has("recycleAfter") ? params.get("recycleAfter").getAsInt() : defaults.recycleAfter(),
+                    params.has("maxExecutions") ? params.get("maxExecutions").getAsInt()
+                            : defaults.maxExecutions(),
+                    params.has("maxTime") ? Duration.ofMillis(params.get("maxTime").getAsLong()) : defaults.maxTime(),
+                    params.has("plateauExecutions") ? params.get("plateauExecutions").getAsInt()
+                            : defaults.plateauExecutions(),
+                    params.has("plateauTime") ? Duration.ofMillis(params.get("plateauTime").getAsLong())
+                            : defaults.plateauTime(),
+                    params.has("emission")
+                            ? Campaign.Emission.valueOf(params.get("emission").getAsString().toUpperCase())
+                            : defaults.emission(),
+                    params.has("sampleRate") ? params.get("sampleRate").getAsDouble() : defaults.sampleRate(),
+                    params.has("statsEvery") ? params.get("statsEvery").getAsInt() : defaults.statsEvery(),
+                    params.has("snapshotEvery") ? params.get("snapshotEvery").getAsInt()
+                            : defaults.snapshotEvery(),
+                    params.has("reservoir") ? params.get("reservoir").getAsInt() : defaults.reservoir());
+            var engine = engine(language);
+
+            int executions;
+            // Closing the logger sends all notifications before the response.
+            try (var logger = new AsyncLogger(new NotificationLogger(id), out, AsyncLogger.DEFAULT_CAPACITY,
+                    AsyncLogger.Overflow.BLOCK)) {
+                executions = Campaign.run(engine, source, options, logger,
+                        () -> cancelled(id));
+            }
+            if (executions < 0) {
+                sendError(id, FUZZING_FAILED, "The code could not be fuzzed, see stderr for details.");
+                return;
+            }
+            var result = new JsonObject();
+            result.addProperty("executions", executions);
+            result.addProperty("cancelled", cancelled(id));
+            result.addProperty("millis", (System.nanoTime() - start) / 1_000_000);
+            sendResult(id, result);
+        } catch (IOException | IllegalArgumentException | IllegalStateException | ClassCastException
+                | UnsupportedOperationException e) {
+            sendError(id, INVALID_PARAMS, e.getMessage());
+        } finally {
+            fuzzing.remove(id);
+        }
+    }
+
+    private boolean cancelled(JsonElement id) {
+        return shuttingDown || fuzzing.getOrDefault(id, false);
+    }
+
+    private Engine engine(String language) {
+        return engines.computeIfAbsent(language, key -> {
+            Supplier<Engine.Builder> configuration = () -> Engine.newBuilder()
+                    .option(CoverageInstrument.ID, "true")
+                    .out(System.err);
+            if (engineCacheDirectory == null) {
+                var engine = configuration.get().build();
+                if (!engine.getLanguages().containsKey(key)) {
+                    engine.close();
+                    throw new IllegalArgumentException("Unknown language " + key);
+                }
+                return engine;
+            }
+            // Check the language first so that no cache is stored for it.
+            if (!installedLanguages().contains(key)) {
+                throw new IllegalArgumentException("Unknown language " + key);
+            }
+            var cache = new EngineCache(engineCacheDirectory, key);
+            engineCaches.put(key, cache);
+            return cache.build(configuration);
+        });
+    }
+
+    // All engines see the same languages, so any engine that is already up
+    // can list them. Only if there is none, a probe engine is created once.
+    private Set<String> installedLanguages() {
+        for (var engine : engines.values()) {
+            return engine.getLanguages().keySet();
+        }
+        if (probe == null) {
+            probe = Engine.create();
+        }
+        return probe.getLanguages().keySet();
+    }
+
+    private Source source(JsonElement id, String language, JsonObject params) throws IOException {
+        if (params.has("code")) {
+            var name = "server-inline-" + inlineSources++ + "-" + id;
+            return Source.newBuilder(language, params.get("code").getAsString(), name).build();
+        }
+        if (params.has("file")) {
+            return Source.newBuilder(language, new File(params.get("file").getAsString())).build();
+        }
+        throw new IllegalArgumentException("Either file or code is required.");
+    }
+
+    private void stop() {
+        shuttingDown = true;
+        worker.shutdown();
+        try {
+            worker.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (var entry : engines.entrySet()) {
+            var cache = engineCaches.get(entry.getKey());
+            if (cache != null) {
+                cache.close(entry.getValue());
+            } else {
+                entry.getValue().close();
+            }
+        }
+        engines.clear();
+        engineCaches.clear();
+        if (probe != null) {
+            probe.close();
+            probe = null;
+        }
+    }
+
+    // Streams notifications through the type adapters into a buffer that is
+    // reused, without building JSON trees, and sends each one as a line.
+    private final class NotificationLogger implements ResultLogger {
+
+        private final JsonElement id;
+        private final RunResultAdapter runs = new RunResultAdapter(gson);
+        private final TypeAdapter<ResultGroup> groups = gson.getAdapter(ResultGroup.class);
+        private final StringWriter buffer = new StringWriter();
+        private final JsonWriter json;
+
+        NotificationLogger(JsonElement id) {
+            this.id = id;
+            try {
+                this.json = gson.newJsonWriter(buffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            // One top-level value per notification
+            this.json.setStrictness(Strictness.LENIENT);
+        }
+
+        @Override
+        public void logRun(RunResult result) {
+            try {
+                begin("fuzz/run");
+                json.name("result");
+                runs.write(json, result);
+                end();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void logProgress(Campaign.Progress progress) {
+            try {
+                begin("fuzz/progress");
+                json.name("executions").value(progress.executions());
+                json.name("millis").value(progress.millis());
+                json.name("coveredSections").value(progress.coveredSections());
+                json.name("outputs").value(progress.outputs());
+                json.name("poolSize").value(progress.poolSize());
+                json.name("emitted").value(progress.emitted());
+                end();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void logSnapshot(List<ResultGroup> groupList) {
+            writeGroups("fuzz/snapshot", groupList);
+        }
+
+        @Override
+        public void logAnalysis(List<ResultGroup> groupList) {
+            writeGroups("fuzz/analysis", groupList);
+        }
+
+        private void writeGroups(String method, List<ResultGroup> groupList) {
+            try {
+                begin(method);
+                json.name("groups");
+                json.beginArray();
+                for (var group : groupList) {
+                    groups.write(json, group.top(REPRESENTATIVES));
+                }
+                json.endArray();
+                end();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Opens the notification and its params, which start with the id of
+        // the request.
+        private void begin(String method) throws IOException {
+            json.beginObject();
+            json.name("jsonrpc").value("2.0");
+            json.name("method").value(method);
+            json.name("params");
+            json.beginObject();
+            json.name("id");
+            gson.toJson(id, json);
+        }
+
+        private void end() throws IOException {
+            json.endObject();
+            json.endObject();
+            json.flush();
+            send(buffer.getBuffer());
+            buffer.getBuffer().setLength(0);
+        }
+    }
+
+    private void sendResult(JsonElement id, JsonElement result) {
+        var message = new JsonObject();
+        message.addProperty("jsonrpc", "2.0");
+        message.add("id", id);
+        message.add("result", result);
+        send(message);
+        out.flush();
+    }
+
+    private void sendError(JsonElement id, int code, String text) {
+        var error = new JsonObject();
+        error.addProperty("code", code);
+        error.addProperty("message", text);
+        var message = new JsonObject();
+        message.addProperty("jsonrpc", "2.0");
+        message.add("id", id);
+        message.add("error", error);
+        send(message);
+        out.flush();
+    }
+
+    private void send(JsonObject message) {
+        send(gson.toJson(message));
+    }
+
+    private synchronized void send(CharSequence line) {
+        out.append(line).println();
+    }
+}
@@ -0,0 +1,165 @@
+package de.hpi.swa.cli.logger;
+
+import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.cli.Campaign.Progress;
+import de.hpi.swa.generator.Runner.RunResult;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Formats and writes results on a dedicated thread, so that the fuzzing loop
+// doesn't wait for the terminal or pipe. The wrapped logger should write to a
+// buffered stream without auto flush, which is flushed here after a batch of
+// results or when no result came for a while. Closing writes everything that
+// is still queued.
+public class AsyncLogger implements ResultLogger, AutoCloseable {
+
+    // What happens to runs when the queue is full. Progress, snapshots and the
+    // analysis are never dropped.
+    public enum Overflow {
+        BLOCK, DROP
+    }
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int FLUSH_BATCH = 256;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final ResultLogger delegate;
+    private final Flushable out;
+    private final int capacity;
+    private final Overflow overflow;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Thread writer;
+    private volatile boolean idle = false;
+    private volatile boolean closed = false;
+    private int dropped = 0;
+
+    public AsyncLogger(ResultLogger delegate, Flushable out, int capacity, Overflow overflow) {
+        this.delegate = delegate;
+        this.out = out;
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.writer = new Thread(this::write, "graalfuzz-logger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void logRun(RunResult result) {
+        if (!reserve(overflow == Overflow.DROP)) {
+            dropped++;
+            return;
+        }
+        enqueue(() -> delegate.logRun(result));
+    }
+
+    @Override
+    public void logProgress(Progress progress) {
+        reserve(false);
+        enqueue(() -> delegate.logProgress(progress));
+    }
+
+    @Override
+    public void logSnapshot(List<ResultGroup> groups) {
+        reserve(false);
+        enqueue(() -> delegate.logSnapshot(groups));
+    }
+
+    @Override
+    public void logAnalysis(List<ResultGroup> groups) {
+        reserve(false);
+        enqueue(() -> delegate.logAnalysis(groups));
+    }
+
+    // Writes everything that is queued and stops the writer thread.
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped > 0) {
+            System.err.println("Dropped " + dropped + " runs because the output couldn't keep up.");
+        }
+    }
+
+    // Takes a slot in the queue. Returns false if the queue is full and the
+    // caller may give up, waits for a slot otherwise.
+    private boolean reserve(boolean mayGiveUp) {
+        while (true) {
+            var current = size.get();
+            if (current < capacity) {
+                if (size.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            } else if (mayGiveUp) {
+                return false;
+            } else {
+                LockSupport.parkNanos(FULL_WAIT_NANOS);
+            }
+        }
+    }
+
+    private void enqueue(Runnable task) {
+        queue.add(task);
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void write() {
+        var unflushed = 0;
+        var lastFlush = System.nanoTime();
+        while (true) {
+            var task = queue.poll();
+            if (task == null) {
+                if (closed && queue.isEmpty()) {
+                    flush();
+                    return;
+                }
+                if (unflushed > 0 && System.nanoTime() - lastFlush >= FLUSH_INTERVAL_NANOS) {
+                    flush();
+                    unflushed = 0;
+                    lastFlush = System.nanoTime();
+                }
+                idle = true;
+                // Check again, a result may have arrived before idle was set.
+                if (queue.isEmpty() && !closed) {
+                    LockSupport.parkNanos(FLUSH_INTERVAL_NANOS);
+                }
+                idle = false;
+                continue;
+            }
+            size.decrementAndGet();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Could not log a result: " + e.getMessage());
+            }
+            unflushed++;
+            if (unflushed >= FLUSH_BATCH) {
+                flush();
+                unflushed = 0;
+                lastFlush = System.nanoTime();
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Could not flush the output: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package de.hpi.swa.cli.logger;
+
+import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.cli.Campaign.Progress;
+import de.hpi.swa.generator.Runner.RunResult;
+import de.hpi.swa.serialization.BinaryEncoder;
+import de.hpi.swa.serialization.DeltaEncoder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+// Writes results as length-prefixed binary frames for tooling, see
+// BinaryEncoder. The stream isn't flushed here. In delta mode, runs are
+// written as deltas against an earlier run, see DeltaEncoder.
+public class BinaryLogger implements ResultLogger {
+    private final BinaryEncoder encoder = new BinaryEncoder();
+    private final OutputStream out;
+    private final DeltaEncoder deltas;
+
+    public BinaryLogger(OutputStream out) {
+        this(out, false);
+    }
+
+    public BinaryLogger(OutputStream out, boolean delta) {
+        this.out = out;
+        this.deltas = delta ? new DeltaEncoder() : null;
+    }
+
+    @Override
+    public void logRun(RunResult result) {
+        if (deltas != null) {
+            encoder.beginFrame(BinaryEncoder.RUN_DELTA);
+            encoder.writeDelta(deltas.encode(result));
+        } else {
+            encoder.beginFrame(BinaryEncoder.RUN);
+            encoder.writeRun(result);
+        }
+        write();
+    }
+
+    @Override
+    public void logProgress(Progress progress) {
+        encoder.beginFrame(BinaryEncoder.PROGRESS);
+        encoder.writeVarint(progress.executions());
+        encoder.writeVarint(progress.millis());
+        encoder.writeVarint(progress.coveredSections());
+        encoder.writeVarint(progress.outputs());
+        encoder.writeVarint(progress.poolSize());
+        encoder.writeVarint(progress.emitted());
+        write();
+    }
+
+    @Override
+    public void logSnapshot(List<ResultGroup> groups) {
+        encoder.beginFrame(BinaryEncoder.SNAPSHOT);
+        encoder.writeGroups(groups.stream().map(g -> g.top(REPRESENTATIVES)).toList());
+        write();
+    }
+
+    @Override
+    public void logAnalysis(List<ResultGroup> groups) {
+        encoder.beginFrame(BinaryEncoder.ANALYSIS);
+        // Top 3 samples of each group, like the JSON output
+        encoder.writeGroups(groups.stream().map(g -> g.top(REPRESENTATIVES)).toList());
+        write();
+    }
+
+    private void write() {
+        try {
+            encoder.endFrame(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -1,41 +1,67 @@
 package de.hpi.swa.cli.logger;
 
 import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.cli.Campaign.Progress;
 import de.hpi.swa.generator.Runner.RunResult;
 import de.hpi.swa.generator.Value;
+import java.io.PrintStream;
 import java.util.List;
 
 public class ConsoleLogger implements ResultLogger {
+    private final PrintStream out;
     private final boolean color;
 
     public ConsoleLogger(boolean color) {
+        this(System.out, color);
+    }
+
+    public ConsoleLogger(PrintStream out, boolean color) {
+        this.out = out;
         this.color = color;
     }
 
     @Override
     public void logRun(RunResult result) {
-        System.out.print("New run. ");
-        System.out.print(String.format("%-20s", Value.format(result.getInput(), result.getUniverse())));
-        System.out.print("  Trace: " + result.getTrace().toString(color));
-        System.out.println();
+        out.print("New run. ");
+        out.print(String.format("%-20s", Value.formatArgs(result.getArgs(), result.getUniverse())));
+        out.print("  Trace: " + result.getTrace().toString(color));
+        out.println();
+    }
+
+    @Override
+    public void logProgress(Progress progress) {
+        System.err.println(String.format(
+                "[%6d ms] %5d executions, %4d sections covered, %2d kinds of outputs, %5d runs shown",
+                progress.millis(), progress.executions(), progress.coveredSections(), progress.outputs(),
+                progress.emitted()));
+    }
+
+    @Override
+    public void logSnapshot(List<ResultGroup> groups) {
+        if (groups.isEmpty()) {
+            return;
+        }
+        var best = groups.get(0);
+        System.err.println(String.format("Ranked %d groups so far, best [Score: %.2f]: %s", groups.size(),
+                best.score(), best.key()));
     }
 
     @Override
     public void logAnalysis(List<ResultGroup> groups) {
-        System.out.println("\n--- Analysis Summary ---");
+        out.println("\n--- Analysis Summary ---");
         for (ResultGroup group : groups) {
-            System.out.println(String.format("Group [Score: %.2f]: %s", group.score(), group.key()));
+            out.println(String.format("Group [Score: %.2f]: %s", group.score(), group.key()));
 
-            // Print top 3 representatives
-            for (int i = 0; i < Math.min(3, group.results().size()); i++) {
+            // Print top representatives
+            for (int i = 0; i < Math.min(REPRESENTATIVES, group.results().size()); i++) {
                 var scoredResult = group.results().get(i);
                 var result = scoredResult.result();
-                System.out.print(String.format("  %-20s", Value.format(result.getInput(), result.getUniverse())));
-                System.out.print("  Trace: " + result.getTrace().toString(color));
-                System.out.println();
+                out.print(String.format("  %-20s", Value.formatArgs(result.getArgs(), result.getUniverse())));
+                out.print("  Trace: " + result.getTrace().toString(color));
+                out.println();
             }
 
-            System.out.println();
+            out.println();
         }
     }
 }
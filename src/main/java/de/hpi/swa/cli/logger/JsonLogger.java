@@ -1,32 +1,150 @@
 package de.hpi.swa.cli.logger;
 
 import com.google.gson.Gson;
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
 import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.cli.Campaign.Progress;
 import de.hpi.swa.generator.Runner.RunResult;
+import de.hpi.swa.serialization.DeltaEncoder;
 import de.hpi.swa.serialization.GsonConfig;
+import de.hpi.swa.serialization.RunDelta;
+import de.hpi.swa.serialization.RunResultAdapter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.List;
-import java.util.Map;
 
+// Writes one JSON object per line. Objects are streamed into the writer
+// without building JSON trees. The writer isn't flushed here. In delta mode,
+// runs are numbered and written as deltas against an earlier run, see
+// DeltaEncoder.
 public class JsonLogger implements ResultLogger {
     private final Gson gson = GsonConfig.createGson();
+    private final RunResultAdapter runs = new RunResultAdapter(gson);
+    private final TypeAdapter<ResultGroup> groups = gson.getAdapter(ResultGroup.class);
+    private final Writer out;
+    private final JsonWriter json;
+    private final DeltaEncoder deltas;
+
+    public JsonLogger(Writer out) {
+        this(out, false);
+    }
+
+    public JsonLogger(Writer out, boolean delta) {
+        this.out = out;
+        this.deltas = delta ? new DeltaEncoder() : null;
+        try {
+            this.json = gson.newJsonWriter(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // One top-level value per line
+        this.json.setStrictness(Strictness.LENIENT);
+    }
 
     @Override
     public void logRun(RunResult result) {
-        var jsonElement = gson.toJsonTree(result);
-        if (jsonElement.isJsonObject()) {
-            jsonElement.getAsJsonObject().addProperty("type", "run");
+        try {
+            json.beginObject();
+            if (deltas != null) {
+                writeDeltaFields(deltas.encode(result));
+            } else {
+                runs.writeFields(json, result);
+            }
+            json.name("type").value("run");
+            json.endObject();
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        System.out.println(gson.toJson(jsonElement));
+    }
+
+    private void writeDeltaFields(RunDelta delta) throws IOException {
+        json.name("id").value(delta.id());
+        if (delta.hasParent()) {
+            json.name("parent").value(delta.parent());
+            json.name("prefix").value(delta.prefix());
+            if (!delta.removed().isEmpty()) {
+                json.name("removed");
+                json.beginObject();
+                for (var removal : delta.removed()) {
+                    json.name(removal.id().toString());
+                    json.beginObject();
+                    if (removal.object()) {
+                        json.name("object").value(true);
+                    }
+                    if (!removal.members().isEmpty()) {
+                        json.name("members");
+                        json.beginArray();
+                        for (var key : removal.members()) {
+                            json.value(key);
+                        }
+                        json.endArray();
+                    }
+                    if (!removal.elements().isEmpty()) {
+                        json.name("elements");
+                        json.beginArray();
+                        for (var index : removal.elements()) {
+                            json.value(index);
+                        }
+                        json.endArray();
+                    }
+                    if (removal.length()) {
+                        json.name("length").value(true);
+                    }
+                    json.endObject();
+                }
+                json.endObject();
+            }
+        }
+        runs.writeFields(json, delta.run());
+    }
+
+    @Override
+    public void logProgress(Progress progress) {
+        try {
+            json.beginObject();
+            json.name("executions").value(progress.executions());
+            json.name("millis").value(progress.millis());
+            json.name("coveredSections").value(progress.coveredSections());
+            json.name("outputs").value(progress.outputs());
+            json.name("poolSize").value(progress.poolSize());
+            json.name("emitted").value(progress.emitted());
+            json.name("type").value("progress");
+            json.endObject();
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void logSnapshot(List<ResultGroup> groupList) {
+        writeGroups("snapshot", groupList);
     }
 
     @Override
     public void logAnalysis(List<ResultGroup> groupList) {
-        var groupsWithTopSamples = Map.of(
-                "type", "analysis",
-                "groups", groupList.stream()
-                        .map(g -> g.top(3))
-                        .toList());
+        writeGroups("analysis", groupList);
+    }
 
-        System.out.println(gson.toJson(groupsWithTopSamples));
+    private void writeGroups(String type, List<ResultGroup> groupList) {
+        try {
+            json.beginObject();
+            json.name("type").value(type);
+            json.name("groups");
+            json.beginArray();
+            for (var group : groupList) {
+                // Top 3 samples of each group
+                groups.write(json, group.top(REPRESENTATIVES));
+            }
+            json.endArray();
+            json.endObject();
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -1,11 +1,20 @@
 package de.hpi.swa.cli.logger;
 
 import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.cli.Campaign.Progress;
 import de.hpi.swa.generator.Runner.RunResult;
 import java.util.List;
 
 public interface ResultLogger {
+    // How many of the best runs of each group are shown
+    int REPRESENTATIVES = 3;
+
     void logRun(RunResult result);
 
+    void logProgress(Progress progress);
+
+    // The ranking of the runs so far, while fuzzing goes on
+    void logSnapshot(List<ResultGroup> groups);
+
     void logAnalysis(List<ResultGroup> groups);
 }
@@ -16,6 +16,11 @@ public final class Coverage {
         covered.add(section);
     }
 
+    // Returns whether any of the other coverage's sections were new.
+    public boolean addAll(Coverage other) {
+        return covered.addAll(other.covered);
+    }
+
     public Set<SourceSection> getCovered() {
         return covered;
     }
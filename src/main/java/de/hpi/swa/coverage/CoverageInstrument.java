@@ -1,15 +1,21 @@
 package de.hpi.swa.coverage;
 
+import java.util.function.Supplier;
+
 import org.graalvm.options.OptionCategory;
 import org.graalvm.options.OptionDescriptors;
 import org.graalvm.options.OptionKey;
 import org.graalvm.options.OptionStability;
 
 import com.oracle.truffle.api.Option;
+import com.oracle.truffle.api.instrumentation.SourceFilter;
 import com.oracle.truffle.api.instrumentation.SourceSectionFilter;
+import com.oracle.truffle.api.instrumentation.StandardTags;
 import com.oracle.truffle.api.instrumentation.TruffleInstrument;
 import com.oracle.truffle.api.instrumentation.TruffleInstrument.Registration;
 
+import de.hpi.swa.generator.Seeds;
+
 @Registration(id = CoverageInstrument.ID, name = " Code Coverage", version = "0.1", services = CoverageInstrument.class)
 public final class CoverageInstrument extends TruffleInstrument {
 
@@ -19,6 +25,10 @@ public final class CoverageInstrument extends TruffleInstrument {
     public static final String ID = "code-coverage";
 
     public Coverage coverage = new Coverage();
+    // Only executions on this thread are recorded, see `collect`.
+    volatile Thread collector = null;
+
+    private Env env;
 
     @Override
     protected OptionDescriptors getOptionDescriptors() {
@@ -29,6 +39,7 @@ public final class CoverageInstrument extends TruffleInstrument {
     protected void onCreate(Env env) {
         var options = env.getOptions();
         if (ENABLED.getValue(options)) {
+            this.env = env;
             enable(env);
             env.registerService(this);
         }
@@ -50,4 +61,41 @@ public final class CoverageInstrument extends TruffleInstrument {
             return null;
         });
     }
+
+    // Records the coverage of a run into the given coverage. The engine is
+    // shared by all contexts, so only code that the run executes on the
+    // current thread is recorded, not contexts being evaluated in the
+    // background meanwhile, nor anything between runs.
+    public <T> T collect(Coverage into, Supplier<T> run) {
+        coverage = into;
+        collector = Thread.currentThread();
+        try {
+            return run.get();
+        } finally {
+            collector = null;
+        }
+    }
+
+    // Collects literals of the source with the given name into the seeds as
+    // soon as it is loaded. Must be called before the source is evaluated,
+    // unless the engine already loaded it. Returns a function that stops
+    // mining.
+    public Runnable mineLiterals(String sourceName, Seeds seeds) {
+        var sourceFilter = SourceFilter.newBuilder()
+                .includeInternal(false)
+                .sourceIs(source -> sourceName.equals(source.getName()))
+                .build();
+        var sectionFilter = SourceSectionFilter.newBuilder()
+                .sourceFilter(sourceFilter)
+                .tagIs(StandardTags.ExpressionTag.class)
+                .build();
+        var instrumenter = env.getInstrumenter();
+        var miner = new LiteralMiner(seeds);
+        var sources = instrumenter.attachLoadSourceListener(sourceFilter, miner, true);
+        var sections = instrumenter.attachLoadSourceSectionListener(sectionFilter, miner, true);
+        return () -> {
+            sources.dispose();
+            sections.dispose();
+        };
+    }
 }
@@ -18,7 +18,9 @@ final class CoverageNode extends ExecutionEventNode {
 
     @Override
     public void onEnter(VirtualFrame frame) {
-        instrument.coverage.addCovered(section);
+        if (Thread.currentThread() == instrument.collector) {
+            instrument.coverage.addCovered(section);
+        }
     }
 
     @Override
@@ -0,0 +1,89 @@
+package de.hpi.swa.coverage;
+
+import java.util.regex.Pattern;
+
+import com.oracle.truffle.api.instrumentation.LoadSourceEvent;
+import com.oracle.truffle.api.instrumentation.LoadSourceListener;
+import com.oracle.truffle.api.instrumentation.LoadSourceSectionEvent;
+import com.oracle.truffle.api.instrumentation.LoadSourceSectionListener;
+
+import de.hpi.swa.generator.Seeds;
+
+// Collects literals from the code under test into `Seeds` without executing
+// anything. Expression sections are classified exactly as they are loaded.
+// Because languages like Python create function ASTs lazily, the full text of
+// each loaded source is also scanned lexically.
+final class LiteralMiner implements LoadSourceListener, LoadSourceSectionListener {
+
+    private static final int MAX_EXPRESSION_LENGTH = 200;
+
+    private static final Pattern STRING = Pattern.compile(
+            "\"((?:[^\"\\\\\\n]|\\\\.){0,64})\"|'((?:[^'\\\\\\n]|\\\\.){0,64})'");
+    private static final Pattern NUMBER = Pattern.compile(
+            "(?<![\\w.$])\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?(?![\\w.$])");
+    private static final Pattern ATTRIBUTE = Pattern.compile(
+            "(?<=[\\w$)\\]])\\s*\\.\\s*([A-Za-z_$][\\w$]*)");
+    private static final Pattern ATTRIBUTE_CHAIN = Pattern.compile(
+            "[A-Za-z_$][\\w$]*(?:\\s*\\.\\s*[A-Za-z_$][\\w$]*)+");
+
+    private final Seeds seeds;
+
+    LiteralMiner(Seeds seeds) {
+        this.seeds = seeds;
+    }
+
+    @Override
+    public void onLoad(LoadSourceEvent event) {
+        var source = event.getSource();
+        if (source.hasCharacters()) {
+            mineText(source.getCharacters());
+        }
+    }
+
+    @Override
+    public void onLoad(LoadSourceSectionEvent event) {
+        var section = event.getSourceSection();
+        if (section == null || !section.isAvailable() || section.getCharLength() > MAX_EXPRESSION_LENGTH) {
+            return;
+        }
+        mineExpression(section.getCharacters().toString().trim());
+    }
+
+    // Only accepts expressions that are a literal or an attribute chain as a
+    // whole, e.g. `"test"`, `42` or `point.lat`.
+    private void mineExpression(String text) {
+        if (STRING.matcher(text).matches()) {
+            addString(text.substring(1, text.length() - 1));
+        } else if (NUMBER.matcher(text).matches()) {
+            seeds.addNumber(text);
+        } else if (ATTRIBUTE_CHAIN.matcher(text).matches()) {
+            var parts = text.split("\\.");
+            for (int i = 1; i < parts.length; i++) {
+                seeds.addKey(parts[i].trim());
+            }
+        }
+    }
+
+    private void mineText(CharSequence text) {
+        var strings = STRING.matcher(text);
+        while (strings.find()) {
+            addString(strings.group(1) != null ? strings.group(1) : strings.group(2));
+        }
+        var numbers = NUMBER.matcher(text);
+        while (numbers.find()) {
+            seeds.addNumber(numbers.group());
+        }
+        var attributes = ATTRIBUTE.matcher(text);
+        while (attributes.find()) {
+            seeds.addKey(attributes.group(1));
+        }
+    }
+
+    private void addString(String literal) {
+        seeds.addString(literal);
+        // Strings double as keys in subscripts (`point['lat']`) and `in` checks.
+        if (!literal.isEmpty()) {
+            seeds.addKey(literal);
+        }
+    }
+}
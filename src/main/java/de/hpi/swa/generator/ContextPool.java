@@ -0,0 +1,176 @@
+package de.hpi.swa.generator;
+
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+
+// Contexts in which the source under test is already evaluated. Runs borrow
+// the current context, and it is recycled after a number of executions, after
+// it had to be cancelled, or after a run changed its global bindings. That
+// way, guest state left behind by one input (module-level caches, appended
+// lists) only leaks into a few later runs. Replacements are built and evaluated on a background
+// thread, so recycling doesn't stall the fuzzing loop. The coverage instrument
+// only records the thread that runs inputs, so evaluating a replacement
+// doesn't add to the coverage of the run in flight.
+public class ContextPool implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_EXECUTIONS = 100;
+    private static final int SPARES = 1;
+
+    public final class Lease {
+
+        public final Context context;
+        public final org.graalvm.polyglot.Value function;
+        public final Watchdog watchdog;
+        private final int globals;
+        private int executions = 0;
+        private boolean polluted = false;
+
+        private Lease(Context context, org.graalvm.polyglot.Value function) {
+            this.context = context;
+            this.function = function;
+            this.watchdog = new Watchdog(context, timeout);
+            this.globals = countGlobals(context);
+        }
+
+        // Marks the context as tainted by earlier runs, e.g. because a replay
+        // behaved differently than the original run.
+        public void markPolluted() {
+            polluted = true;
+        }
+    }
+
+    private final Engine engine;
+    private final Source source;
+    private final Duration timeout;
+    private final int maxExecutions;
+    private final BlockingQueue<Lease> spares = new LinkedBlockingQueue<>();
+    private final AtomicInteger pendingBuilds = new AtomicInteger();
+    private final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "graalfuzz-context-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Lease current;
+    private int recycled = 0;
+
+    // Evaluates the source in a first context right away, so that errors in
+    // the code under test surface here.
+    public ContextPool(Engine engine, Source source, Duration timeout, int maxExecutions) {
+        this.engine = engine;
+        this.source = source;
+        this.timeout = timeout;
+        this.maxExecutions = maxExecutions;
+        this.current = build();
+        for (var i = 0; i < SPARES; i++) {
+            buildSpare();
+        }
+    }
+
+    public Lease acquire() {
+        if (current == null) {
+            current = nextSpare();
+            buildSpare();
+        }
+        return current;
+    }
+
+    // Returns the context after a run and recycles it if necessary.
+    public void release(Lease lease) {
+        lease.executions++;
+        var cancelled = lease.watchdog.isCancelled();
+        var exhausted = lease.executions >= maxExecutions;
+        if (!cancelled && !exhausted && !lease.polluted) {
+            lease.polluted = countGlobals(lease.context) != lease.globals;
+        }
+        if (cancelled || exhausted || lease.polluted) {
+            if (lease == current) {
+                current = null;
+            }
+            recycled++;
+            builder.execute(() -> closeQuietly(lease.context));
+        }
+    }
+
+    public int getRecycled() {
+        return recycled;
+    }
+
+    @Override
+    public void close() {
+        builder.shutdownNow();
+        if (current != null) {
+            closeQuietly(current.context);
+        }
+        for (var spare : spares) {
+            closeQuietly(spare.context);
+        }
+    }
+
+    private Lease nextSpare() {
+        var spare = spares.poll();
+        while (spare == null && pendingBuilds.get() > 0) {
+            try {
+                spare = spares.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        // If building in the background failed, build here so that the error
+        // is reported to the caller.
+        return spare != null ? spare : build();
+    }
+
+    private void buildSpare() {
+        pendingBuilds.incrementAndGet();
+        builder.execute(() -> {
+            try {
+                spares.add(build());
+            } catch (PolyglotException | IllegalStateException e) {
+                System.err.println("Could not prepare a context: " + e.getMessage());
+            } finally {
+                pendingBuilds.decrementAndGet();
+            }
+        });
+    }
+
+    private Lease build() {
+        var context = Context.newBuilder().engine(engine).allowAllAccess(true).build();
+        try {
+            return new Lease(context, context.eval(source));
+        } catch (PolyglotException | IllegalStateException e) {
+            closeQuietly(context);
+            throw e;
+        }
+    }
+
+    // The number of global bindings is a cheap fingerprint of the context's
+    // state. Inputs that make the code under test define new globals change
+    // it.
+    private int countGlobals(Context context) {
+        try {
+            var bindings = context.getBindings(source.getLanguage());
+            return bindings.hasMembers() ? bindings.getMemberKeys().size() : 0;
+        } catch (PolyglotException | IllegalStateException | UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    private static void closeQuietly(Context context) {
+        try {
+            context.close();
+        } catch (PolyglotException | IllegalStateException e) {
+            // Contexts cancelled after a timeout are already closed.
+        }
+    }
+}
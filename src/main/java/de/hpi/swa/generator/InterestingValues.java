@@ -0,0 +1,173 @@
+package de.hpi.swa.generator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import de.hpi.swa.generator.Trace.Call;
+import de.hpi.swa.generator.Trace.Element;
+import de.hpi.swa.generator.Trace.Member;
+
+// Boundary and edge-case values per primitive type. How often they are mixed
+// into generation is adapted per shape: if runs using interesting values of a
+// shape crash or find new coverage more often than runs using plain values,
+// interesting values of that shape are picked more often, and vice versa.
+// Picked values are shared instances, so a run is credited to the arm that
+// actually produced its values: equal values that were drawn uniformly or
+// from the mined seeds count for the plain arm.
+public class InterestingValues {
+
+    public static final List<Integer> INTS = List.of(
+            0, 1, -1, 2, -2, 7, 8, 10, 16, 32, 64, 100, 127, 128, -128, 255, 256, 1000, 1024,
+            4096, 32767, -32768, 65535, 65536, Integer.MAX_VALUE, Integer.MIN_VALUE,
+            Integer.MAX_VALUE - 1, Integer.MIN_VALUE + 1);
+
+    public static final List<java.lang.Double> DOUBLES = List.of(
+            0.0, -0.0, 1.0, -1.0, 0.5, -0.5, 0.1, 1e-9, 1e300, -1e300, 9007199254740992.0,
+            java.lang.Double.MIN_VALUE, java.lang.Double.MAX_VALUE, -java.lang.Double.MAX_VALUE,
+            java.lang.Double.NaN, java.lang.Double.POSITIVE_INFINITY, java.lang.Double.NEGATIVE_INFINITY);
+
+    public static final List<String> STRINGS = List.of(
+            "", " ", "0", "-1", "1.5", "true", "false", "null", "undefined", "NaN", "a", "A",
+            "\n", "\t", "\0", "'", "\"", "\\", "%s", "{}", "[]", "<script>", "\u00e9", "\u00df",
+            "\u65e5\u672c\u8a9e", "\uD83D\uDE00", "\u202E", "a".repeat(1000), "\u65e5\u672c\u8a9e".repeat(300));
+
+    private static final List<Value.Int> INT_VALUES = INTS.stream().map(Value.Int::new).toList();
+    private static final List<Value.Double> DOUBLE_VALUES = DOUBLES.stream().map(Value.Double::new).toList();
+    private static final List<Value.StringValue> STRING_VALUES = STRINGS.stream().map(Value.StringValue::new)
+            .toList();
+
+    private static final Set<Value> PICKED = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    static {
+        PICKED.addAll(INT_VALUES);
+        PICKED.addAll(DOUBLE_VALUES);
+        PICKED.addAll(STRING_VALUES);
+    }
+
+    private static class Arm {
+        int runs = 0;
+        int rewards = 0;
+
+        double rate() {
+            // Laplace smoothing so that unobserved arms are neither favoured nor
+            // ruled out.
+            return (rewards + 1.0) / (runs + 2.0);
+        }
+    }
+
+    private static class Stats {
+        final Arm interesting = new Arm();
+        final Arm plain = new Arm();
+    }
+
+    private final double initialProbability;
+    private final double minProbability;
+    private final double maxProbability;
+    private final Map<Shape, Stats> stats = new HashMap<>();
+
+    public InterestingValues() {
+        this(0.2, 0.05, 0.75);
+    }
+
+    public InterestingValues(double initialProbability, double minProbability, double maxProbability) {
+        if (minProbability < 0.0 || maxProbability > 1.0 || minProbability > maxProbability) {
+            throw new IllegalArgumentException("Probabilities must satisfy 0 <= min <= max <= 1.");
+        }
+        this.initialProbability = initialProbability;
+        this.minProbability = minProbability;
+        this.maxProbability = maxProbability;
+    }
+
+    // Probability of picking an interesting value for the given shape.
+    public synchronized double probability(Shape shape) {
+        var s = stats.get(shape);
+        if (s == null) {
+            return initialProbability;
+        }
+        var p = initialProbability * s.interesting.rate() / s.plain.rate();
+        return Math.max(minProbability, Math.min(maxProbability, p));
+    }
+
+    public boolean shouldUse(Shape shape, Random random) {
+        return random.nextDouble() < probability(shape);
+    }
+
+    public static Value.Int pickInt(Random random) {
+        return INT_VALUES.get(random.nextInt(INT_VALUES.size()));
+    }
+
+    public static Value.Double pickDouble(Random random) {
+        return DOUBLE_VALUES.get(random.nextInt(DOUBLE_VALUES.size()));
+    }
+
+    public static Value.StringValue pickString(Random random) {
+        return STRING_VALUES.get(random.nextInt(STRING_VALUES.size()));
+    }
+
+    // Whether the value was picked by the interesting arm, by identity.
+    // Traces and universes keep the generated instances.
+    public static boolean isInteresting(Value value) {
+        return PICKED.contains(value);
+    }
+
+    // Credits the outcome of a run to the arms that produced its primitive
+    // values. A run is rewarding if it crashed or covered something new.
+    public synchronized void observe(Trace trace, boolean rewarding) {
+        var credited = new HashSet<Object>();
+        var values = new ArrayList<Value>();
+        for (var entry : trace.entries) {
+            switch (entry) {
+                case Call(var args) -> values.addAll(args);
+                case Member(var id, var key, var member) -> values.add(member);
+                case Element(var id, var index, var element) -> values.add(element);
+                default -> {
+                }
+            }
+        }
+        for (var value : values) {
+            if (value == null) {
+                continue;
+            }
+            var shape = switch (value) {
+                case Value.Int v -> Shape.INT;
+                case Value.Double v -> Shape.DOUBLE;
+                case Value.StringValue v -> Shape.STRING;
+                default -> null;
+            };
+            if (shape == null) {
+                continue;
+            }
+            var interesting = isInteresting(value);
+            if (!credited.add(List.of(shape, interesting))) {
+                continue;
+            }
+            var s = stats.computeIfAbsent(shape, k -> new Stats());
+            var arm = interesting ? s.interesting : s.plain;
+            arm.runs++;
+            if (rewarding) {
+                arm.rewards++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        var sb = new StringBuilder("InterestingValues{");
+        var first = true;
+        for (var shape : stats.keySet()) {
+            if (!first) {
+                sb.append(", ");
+            }
+            first = false;
+            sb.append(shape).append(String.format(": %.2f", probability(shape)));
+        }
+        return sb.append("}").toString();
+    }
+}
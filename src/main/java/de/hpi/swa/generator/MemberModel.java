@@ -0,0 +1,185 @@
+package de.hpi.swa.generator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import de.hpi.swa.generator.Trace.Element;
+import de.hpi.swa.generator.Trace.Member;
+
+// Learns which kinds of values members should have. For each member site
+// (the access path of the object plus the member key, e.g. `arg0.a`), it counts
+// how runs went that decided the member to be absent or of a certain kind. If
+// `{a: 42}` always crashes, ints are rarely generated for `arg0.a` afterwards.
+public class MemberModel {
+
+    // Arguments are the roots of all paths, e.g. `arg0.a` or `arg1[]`.
+    public static final String ARG_PATH_PREFIX = "arg";
+    // All elements of an array share one site, e.g. `arg0.xs[]`.
+    public static final String ELEMENT_KEY = "[]";
+
+    private static final int ABSENT = Value.Kind.values().length;
+    private static final int SUCCESSES = 0;
+    private static final int CRASHES = 1;
+    private static final int COVERAGE_GAINS = 2;
+
+    private static final double MIN_EXISTS_PROBABILITY = 0.05;
+    private static final double MAX_EXISTS_PROBABILITY = 0.95;
+
+    // Member site -> arm (kind ordinal or ABSENT) -> outcome counts
+    private Map<String, int[][]> sites = new HashMap<>();
+
+    public static String argPath(int index) {
+        return ARG_PATH_PREFIX + index;
+    }
+
+    public static String site(String path, String key) {
+        return key.equals(ELEMENT_KEY) ? path + key : path + "." + key;
+    }
+
+    // Decides whether the member exists and which kind its value has. Returns
+    // null if the member should not exist.
+    public synchronized Value.Kind sample(String path, String key, Seeds seeds, Random random) {
+        var counts = sites.get(site(path, key));
+        if (counts == null) {
+            var exists = seeds.isKey(key)
+                    ? random.nextDouble() < Seeds.KEY_EXISTS_PROBABILITY
+                    : random.nextBoolean();
+            return exists ? sampleKind(null, random) : null;
+        }
+        var present = new int[3];
+        for (var kind = 0; kind < ABSENT; kind++) {
+            for (var outcome = 0; outcome < 3; outcome++) {
+                present[outcome] += counts[kind][outcome];
+            }
+        }
+        var presentScore = score(present);
+        var absentScore = score(counts[ABSENT]);
+        var existsProbability = Math.max(MIN_EXISTS_PROBABILITY,
+                Math.min(MAX_EXISTS_PROBABILITY, presentScore / (presentScore + absentScore)));
+        return random.nextDouble() < existsProbability ? sampleKind(counts, random) : null;
+    }
+
+    // Samples a kind proportionally to how well it did so far.
+    public synchronized Value.Kind sampleKind(String path, String key, Random random) {
+        return sampleKind(sites.get(site(path, key)), random);
+    }
+
+    private static Value.Kind sampleKind(int[][] counts, Random random) {
+        var kinds = Value.Kind.values();
+        if (counts == null) {
+            return kinds[random.nextInt(kinds.length)];
+        }
+        var scores = new double[kinds.length];
+        var total = 0.0;
+        for (var i = 0; i < kinds.length; i++) {
+            scores[i] = score(counts[i]);
+            total += scores[i];
+        }
+        var target = random.nextDouble() * total;
+        for (var i = 0; i < kinds.length; i++) {
+            target -= scores[i];
+            if (target <= 0) {
+                return kinds[i];
+            }
+        }
+        return kinds[kinds.length - 1];
+    }
+
+    // Smoothed rate of runs that succeeded or found new coverage.
+    private static double score(int[] counts) {
+        var runs = counts[SUCCESSES] + counts[CRASHES];
+        return (counts[SUCCESSES] + counts[COVERAGE_GAINS] + 1.0) / (runs + 2.0);
+    }
+
+    public synchronized void observe(Trace trace, boolean crashed, boolean gainedCoverage) {
+        var paths = trace.objectPaths();
+        var seen = new HashSet<String>();
+        for (var entry : trace.entries) {
+            String site;
+            Value value;
+            switch (entry) {
+                case Member(var id, var key, var member) -> {
+                    site = site(paths.getOrDefault(id, "?"), key);
+                    value = member;
+                }
+                case Element(var id, var index, var element) -> {
+                    site = site(paths.getOrDefault(id, "?"), ELEMENT_KEY);
+                    value = element;
+                }
+                default -> {
+                    continue;
+                }
+            }
+            if (!seen.add(site)) {
+                continue;
+            }
+            var counts = sites.computeIfAbsent(site, s -> new int[ABSENT + 1][3]);
+            var arm = value == null ? ABSENT : Value.Kind.of(value).ordinal();
+            counts[arm][crashed ? CRASHES : SUCCESSES]++;
+            if (gainedCoverage) {
+                counts[arm][COVERAGE_GAINS]++;
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return sites.size();
+    }
+
+    // Loads counts of previous sessions. Missing files are ignored, malformed
+    // ones are rejected as a whole. Sites stored with a different number of
+    // kinds, by versions before lists were generated, are dropped.
+    public synchronized void load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(file)) {
+            Map<String, int[][]> loaded = new Gson().fromJson(reader, new TypeToken<Map<String, int[][]>>() {
+            }.getType());
+            if (loaded == null) {
+                return;
+            }
+            var outdated = 0;
+            var valid = new HashMap<String, int[][]>();
+            for (var site : loaded.entrySet()) {
+                var counts = site.getValue();
+                if (site.getKey() == null || counts == null) {
+                    throw new IOException("Malformed member model " + file + ": empty site");
+                }
+                if (counts.length != ABSENT + 1) {
+                    outdated++;
+                    continue;
+                }
+                for (var arm : counts) {
+                    if (arm == null || arm.length != 3 || arm[SUCCESSES] < 0 || arm[CRASHES] < 0
+                            || arm[COVERAGE_GAINS] < 0) {
+                        throw new IOException("Malformed member model " + file + ": counts of "
+                                + site.getKey());
+                    }
+                }
+                valid.put(site.getKey(), counts);
+            }
+            if (outdated > 0) {
+                System.err.println("Dropped " + outdated + " member sites of " + file
+                        + " stored with a different number of kinds.");
+            }
+            sites = valid;
+        }
+    }
+
+    public synchronized void store(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            new Gson().toJson(sites, writer);
+        }
+    }
+}
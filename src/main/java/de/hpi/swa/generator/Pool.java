@@ -6,51 +6,123 @@ import java.util.Random;
 
 import de.hpi.swa.coverage.Coverage;
 import de.hpi.swa.generator.Trace.Call;
+import de.hpi.swa.generator.Trace.Crash;
+import de.hpi.swa.generator.Trace.Timeout;
 
 public class Pool {
 
+    // Number of times new entries are executed again to get a stable time
+    // and to check that they behave deterministically. Entries that timed out
+    // or crashed are not replayed: a hanging input would cost the timeout
+    // each time.
+    public static final int CALIBRATION_RUNS = 3;
+
+    // Entries are selected more often the faster they run compared to the
+    // average entry, within these bounds.
+    private static final double MIN_SPEED_FACTOR = 0.1;
+    private static final double MAX_SPEED_FACTOR = 3.0;
+    // Entries that don't reproduce their trace and coverage are less useful
+    // to build on.
+    private static final double UNSTABLE_FACTOR = 0.5;
+    // Crashes are timed only once, which isn't reliable, so they get a fixed
+    // speed factor instead.
+    private static final double CRASH_SPEED_FACTOR = 1.0;
+
     public static class PoolEntry {
 
         public final Trace trace;
         public final Coverage coverage;
         public final double quality;
-
-        public PoolEntry(Trace trace, Coverage coverage) {
+        // Whether the run ended in a crash or a timeout
+        public final boolean crashed;
+        public final boolean timedOut;
+        private long totalNanos;
+        private int executions = 1;
+        private boolean stable = true;
+
+        public PoolEntry(Trace trace, Coverage coverage, long nanos) {
             this.trace = trace;
             this.coverage = coverage;
             this.quality = coverage.getCovered().size() * 10.0 + trace.entries.size();
+            var last = trace.entries.isEmpty() ? null : trace.entries.get(trace.entries.size() - 1);
+            this.crashed = last instanceof Crash;
+            this.timedOut = last instanceof Timeout;
+            this.totalNanos = nanos;
+        }
+
+        // Adds a re-execution of this entry's trace.
+        public void calibrate(Trace trace, Coverage coverage, long nanos) {
+            totalNanos += nanos;
+            executions++;
+            if (!this.trace.equals(trace.deduplicate()) || !this.coverage.equals(coverage)) {
+                stable = false;
+            }
+        }
+
+        public long nanos() {
+            return totalNanos / executions;
+        }
+
+        public boolean isCalibrated() {
+            return executions > CALIBRATION_RUNS || crashed || timedOut;
+        }
+
+        public boolean isStable() {
+            return stable;
         }
     }
 
     private final Map<Trace, PoolEntry> entries;
     private final Random random;
+    private final Seeds seeds;
+    private final InterestingValues interesting;
+    private final MemberModel memberModel;
+    private final int arity;
+    private final Coverage totalCoverage = new Coverage();
 
-    public Pool() {
+    public Pool(Seeds seeds, InterestingValues interesting, MemberModel memberModel, int arity) {
         this.entries = new HashMap<>();
         this.random = new Random();
+        this.seeds = seeds;
+        this.interesting = interesting;
+        this.memberModel = memberModel;
+        this.arity = arity;
     }
 
-    public void add(Trace trace, Coverage coverage) {
+    // Returns the entry if it was added, so that it can be calibrated, and
+    // null otherwise.
+    public PoolEntry add(Trace trace, Coverage coverage, long nanos) {
         // Use deduplicated trace as key for consistent hashing
         Trace keyTrace = trace.deduplicate();
-        PoolEntry newEntry = new PoolEntry(keyTrace, coverage);
+        PoolEntry newEntry = new PoolEntry(keyTrace, coverage, nanos);
 
-        // Only add or replace if new entry has better quality
+        // Only add or replace if new entry has better quality, or equal
+        // quality and runs faster
         PoolEntry existing = entries.get(keyTrace);
-        if (existing == null || newEntry.quality > existing.quality) {
+        var added = existing == null || newEntry.quality > existing.quality
+                || (newEntry.quality == existing.quality && nanos < existing.nanos());
+        if (added) {
             entries.put(keyTrace, newEntry);
         }
+
+        var gainedCoverage = totalCoverage.addAll(coverage);
+        // Hangs are avoided like crashes.
+        var crashed = newEntry.crashed || newEntry.timedOut;
+        interesting.observe(trace, crashed || gainedCoverage);
+        memberModel.observe(trace, crashed, gainedCoverage);
+        return added ? newEntry : null;
     }
 
     public Trace createNewTrace() {
-        if (entries.isEmpty() || random.nextDouble() < 0.1) {
+        // Without parameters, there are no decisions to rethink.
+        if (entries.isEmpty() || arity == 0 || random.nextDouble() < 0.1) {
             var trace = new Trace();
-            trace.add(new Call((new Universe()).generateValue(random)));
+            trace.add(new Call((new Universe()).generateArgs(arity, random, seeds, interesting)));
             return trace;
         }
 
         while (true) {
-            var newTrace = selectWeightedEntry().trace.rethinkLastDecision(random);
+            var newTrace = selectWeightedEntry().trace.rethinkLastDecision(random, seeds, interesting, memberModel);
             if (isWorthExploring(newTrace)) {
                 return newTrace;
             }
@@ -63,8 +135,12 @@ public class Pool {
             return poolEntries.iterator().next();
         }
 
+        var averageNanos = poolEntries.stream()
+                .mapToLong(PoolEntry::nanos)
+                .average()
+                .orElse(0.0);
         double totalQuality = poolEntries.stream()
-                .mapToDouble(entry -> entry.quality)
+                .mapToDouble(entry -> energy(entry, averageNanos))
                 .sum();
 
         if (totalQuality == 0.0) {
@@ -76,7 +152,7 @@ public class Pool {
         double cumulativeQuality = 0.0;
 
         for (var entry : poolEntries) {
-            cumulativeQuality += entry.quality;
+            cumulativeQuality += energy(entry, averageNanos);
             if (randomValue <= cumulativeQuality) {
                 return entry;
             }
@@ -86,6 +162,14 @@ public class Pool {
         return poolEntries.iterator().next();
     }
 
+    // How much of the budget an entry gets: its quality, scaled by how fast
+    // it runs compared to the average entry and whether it is stable.
+    private static double energy(PoolEntry entry, double averageNanos) {
+        var speed = averageNanos / Math.max(entry.nanos(), 1);
+        speed = entry.crashed ? CRASH_SPEED_FACTOR : Math.max(MIN_SPEED_FACTOR, Math.min(MAX_SPEED_FACTOR, speed));
+        return entry.quality * speed * (entry.isStable() ? 1.0 : UNSTABLE_FACTOR);
+    }
+
     private boolean isWorthExploring(Trace trace) {
         for (var keyTrace : entries.keySet()) {
             if (keyTrace.startsWith(trace) && keyTrace.numDecisions() == trace.numDecisions()) {
@@ -109,12 +193,18 @@ public class Pool {
         return entries.size();
     }
 
+    // The number of source sections covered by any run so far.
+    public int getCoveredSections() {
+        return totalCoverage.getCovered().size();
+    }
+
     public void printStats() {
         System.err.println("Pool stats: " + entries.size() + " entries");
         int i = 0;
         for (var entry : entries.values()) {
             System.err.println("  Entry " + i + ": coverage=" + entry.coverage.getCovered().size()
-                    + ", quality=" + entry.quality + ": " + entry.trace);
+                    + ", quality=" + entry.quality + ", time=" + entry.nanos() / 1000 + "us"
+                    + (entry.isStable() ? "" : " (unstable)") + ": " + entry.trace);
             i++;
         }
     }
@@ -1,32 +1,144 @@
 package de.hpi.swa.generator;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
 
 import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.proxy.Proxy;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyHashMap;
+import org.graalvm.polyglot.proxy.ProxyIterator;
 import org.graalvm.polyglot.proxy.ProxyObject;
 
 import de.hpi.swa.generator.Trace.Call;
 import de.hpi.swa.generator.Trace.Crash;
+import de.hpi.swa.generator.Trace.Element;
+import de.hpi.swa.generator.Trace.Length;
 import de.hpi.swa.generator.Trace.Return;
+import de.hpi.swa.generator.Trace.Timeout;
 import de.hpi.swa.generator.Trace.Member;
 import de.hpi.swa.generator.Trace.QueryMember;
+import de.hpi.swa.generator.Trace.TraceEntry;
+import de.hpi.swa.generator.Value.ObjectId;
 
 public abstract class Runner {
 
-    public static Trace runWithRandomArgs(org.graalvm.polyglot.Value function, Random random) {
+    private static final int MAX_PROBED_ARITY = 8;
+
+    // Python: "f() missing 2 required positional arguments: 'a' and 'b'"
+    private static final Pattern MISSING_ARGUMENTS = Pattern.compile("missing (\\d+) required positional argument");
+    // Python: "f() takes 1 positional argument but 2 were given" or
+    // "takes from 1 to 3 positional arguments", Ruby: "wrong number of
+    // arguments (given 0, expected 2)", other languages similarly.
+    private static final Pattern EXPECTED_ARGUMENTS = Pattern.compile(
+            "takes (?:from |exactly |at least )?(\\d+) (?:to \\d+ )?(?:positional )?arguments?"
+                    + "|expected (\\d+)(?:\\.\\.\\d+|\\+)?\\)?"
+                    + "|expects? (?:exactly |at least )?(\\d+) arguments?");
+
+    // Finds out how many arguments the function expects. Languages that
+    // expose their parameters as metadata are asked directly. Otherwise, the
+    // function is called with null arguments until it doesn't complain about
+    // the number of arguments anymore; arity errors often state the expected
+    // number, so this usually takes one or two calls. Probing runs the code
+    // under test outside of any run, so the context is marked as polluted and
+    // recycled once it is released.
+    public static int detectArity(ContextPool.Lease lease) {
+        var function = lease.function;
+        var watchdog = lease.watchdog;
+        var arity = arityFromMetadata(function);
+        if (arity >= 0) {
+            return arity;
+        }
+        lease.markPolluted();
+        var candidate = 1;
+        var probed = new HashSet<Integer>();
+        while (candidate <= MAX_PROBED_ARITY && probed.add(candidate)) {
+            try {
+                watchdog.execute(function, new Object[candidate]);
+                return candidate;
+            } catch (PolyglotException e) {
+                if (watchdog.timedOut()) {
+                    return candidate;
+                }
+                var expected = expectedArity(e.getMessage(), candidate);
+                if (expected < 0) {
+                    // The arguments were accepted, the function just didn't
+                    // like the nulls.
+                    return candidate;
+                }
+                candidate = expected;
+            }
+        }
+        return 1;
+    }
+
+    private static int arityFromMetadata(org.graalvm.polyglot.Value function) {
+        try {
+            // Python functions and methods
+            if (function.hasMember("__code__")) {
+                var count = function.getMember("__code__").getMember("co_argcount");
+                if (count != null && count.fitsInInt()) {
+                    var bound = function.hasMember("__self__") ? 1 : 0;
+                    return Math.max(0, count.asInt() - bound);
+                }
+            }
+            // JavaScript functions
+            if (function.canExecute() && function.hasMember("length")) {
+                var length = function.getMember("length");
+                if (length != null && length.fitsInInt()) {
+                    return length.asInt();
+                }
+            }
+        } catch (PolyglotException | UnsupportedOperationException | IllegalStateException e) {
+            // Metadata of this language looks different, fall back to probing.
+        }
+        return -1;
+    }
+
+    // The arity an arity error asks for, or -1 if the message isn't one.
+    private static int expectedArity(String message, int given) {
+        if (message == null) {
+            return -1;
+        }
+        var missing = MISSING_ARGUMENTS.matcher(message);
+        if (missing.find()) {
+            return given + Integer.parseInt(missing.group(1));
+        }
+        var expected = EXPECTED_ARGUMENTS.matcher(message);
+        if (expected.find()) {
+            for (var i = 1; i <= expected.groupCount(); i++) {
+                if (expected.group(i) != null) {
+                    return Integer.parseInt(expected.group(i));
+                }
+            }
+        }
+        return -1;
+    }
+
+    public static Trace runWithRandomArgs(org.graalvm.polyglot.Value function, Watchdog watchdog, int arity,
+            Random random, Seeds seeds, InterestingValues interesting, MemberModel memberModel) {
         var universe = new Universe();
-        var input = universe.generateValue(random);
+        var args = universe.generateArgs(arity, random, seeds, interesting);
         var trace = new Trace();
-        run(function, universe, input, trace, random);
+        run(function, watchdog, universe, args, trace, random, seeds, interesting, memberModel);
         return trace;
     }
 
-    public static RunResult run(org.graalvm.polyglot.Value function, Trace startingWith, Random random) {
+    public static RunResult run(org.graalvm.polyglot.Value function, Watchdog watchdog, Trace startingWith,
+            Random random, Seeds seeds, InterestingValues interesting, MemberModel memberModel) {
         var universe = startingWith.toUniverse();
-        var input = ((Call) startingWith.entries.get(0)).arg();
+        var args = ((Call) startingWith.entries.get(0)).args();
         var trace = new Trace();
-        var output = run(function, universe, input, trace, random);
-        return new RunResult(universe, input, output, trace);
+        var start = System.nanoTime();
+        var output = run(function, watchdog, universe, args, trace, random, seeds, interesting, memberModel);
+        var nanos = System.nanoTime() - start;
+        return new RunResult(universe, args, output, trace, nanos);
     }
 
     public sealed interface FunctionResult {
@@ -35,16 +147,22 @@ public abstract class Runner {
 
         record Crash(String message, java.util.List<String> stackTrace) implements FunctionResult {
         }
+
+        // The execution was aborted because it took longer than the timeout.
+        record Timeout(long millis) implements FunctionResult {
+        }
     }
 
-    public record RunResult(Universe universe, Value input, FunctionResult output, Trace trace) {
+    // `nanos` is the wall-clock time of the execution, measured with a
+    // monotonic clock.
+    public record RunResult(Universe universe, List<Value> args, FunctionResult output, Trace trace, long nanos) {
 
         public Universe getUniverse() {
             return universe;
         }
 
-        public Value getInput() {
-            return input;
+        public List<Value> getArgs() {
+            return args;
         }
 
         public FunctionResult getOutput() {
@@ -62,23 +180,53 @@ public abstract class Runner {
             return trace;
         }
 
+        public long getNanos() {
+            return nanos;
+        }
+
         public RunResult withDeduplicatedTrace() {
-            return new RunResult(universe, input, output, trace.deduplicate());
+            return new RunResult(universe, args, output, trace.deduplicate(), nanos);
         }
     }
 
-    private static FunctionResult run(org.graalvm.polyglot.Value function, Universe universe, Value input, Trace trace, Random random) {
-        trace.add(new Call(input));
-        try {
-            var polyglotInput = toPolyglotValue(input, universe, trace, random);
-            var returnValue = function.execute(polyglotInput);
+    // State of a single execution that proxies share. Proxies are cached per
+    // object, so guest code sees the same identity for the same object and
+    // repeated accesses don't allocate.
+    private record Execution(Universe universe, Trace trace, Random random, Seeds seeds,
+            InterestingValues interesting, MemberModel memberModel, Set<TraceEntry> recorded,
+            Map<ObjectId, Proxy> proxies) {
 
-            var typeName = getTypeName(returnValue);
-            String stringValue = returnValue.toString();
+        Execution(Universe universe, Trace trace, Random random, Seeds seeds, InterestingValues interesting,
+                MemberModel memberModel) {
+            this(universe, trace, random, seeds, interesting, memberModel, new HashSet<>(), new HashMap<>());
+        }
+    }
 
-            trace.add(new Return(typeName, stringValue));
-            return new FunctionResult.Normal(typeName, stringValue);
+    private static FunctionResult run(org.graalvm.polyglot.Value function, Watchdog watchdog, Universe universe,
+            List<Value> args, Trace trace, Random random, Seeds seeds, InterestingValues interesting,
+            MemberModel memberModel) {
+        trace.add(new Call(args));
+        try {
+            var execution = new Execution(universe, trace, random, seeds, interesting, memberModel);
+            var guestArgs = new Object[args.size()];
+            for (var i = 0; i < guestArgs.length; i++) {
+                guestArgs[i] = toGuestValue(args.get(i), MemberModel.argPath(i), execution);
+            }
+            // Converting the result can run guest code like `__repr__` or
+            // `toString`, which may hang as well.
+            var normal = watchdog.watch(() -> {
+                var returnValue = function.execute(guestArgs);
+                return new FunctionResult.Normal(getTypeName(returnValue), returnValue.toString());
+            });
+
+            trace.add(new Return(normal.typeName(), normal.value()));
+            return normal;
         } catch (PolyglotException e) {
+            if (watchdog.timedOut()) {
+                var millis = watchdog.getTimeout().toMillis();
+                trace.add(new Timeout(millis));
+                return new FunctionResult.Timeout(millis);
+            }
             trace.add(new Crash(e.getMessage()));
             // map in java over e.getStackTrace() to arraylist of strings
             var stackTrace = java.util.Arrays.stream(e.getStackTrace())
@@ -94,66 +242,333 @@ public abstract class Runner {
             if (metaObject != null) {
                 return metaObject.getMetaQualifiedName();
             }
+        } catch (PolyglotException e) {
+            // A timeout must still abort the run.
+            if (e.isInterrupted() || e.isCancelled()) {
+                throw e;
+            }
         } catch (Exception e) { }
 
         return "unknown";
     }
 
-    public static org.graalvm.polyglot.Value toPolyglotValue(Value value, Universe universe, Trace trace, Random random) {
+    // Stands for absent members and null values among the converted values
+    // that proxies cache.
+    private static final Object NO_VALUE = new Object();
+
+    // Converts a value into a host object that can be passed to the guest
+    // directly. Primitives are boxed instead of wrapped in polyglot values.
+    private static Object toGuestValue(Value value, String path, Execution execution) {
         return switch (value) {
             case Value.Null() ->
-                org.graalvm.polyglot.Value.asValue(null);
+                null;
             case Value.Boolean(var bool) ->
-                org.graalvm.polyglot.Value.asValue(bool);
+                bool;
             case Value.Int(var int_) ->
-                org.graalvm.polyglot.Value.asValue(int_);
+                int_;
             case Value.Double(var double_) ->
-                org.graalvm.polyglot.Value.asValue(double_);
+                double_;
             case Value.StringValue(var string) ->
-                org.graalvm.polyglot.Value.asValue(string);
-            case Value.ObjectValue(var id) -> {
-                var quantumObject = universe.getOrCreateObject(id);
-                yield org.graalvm.polyglot.Value.asValue(new ProxyObject() {
-                    @Override
-                    public boolean hasMember(String key) {
-                        if (key.equals("org.graalvm.python.embedding.KeywordArguments.is_keyword_arguments")
-                                || key.equals("org.graalvm.python.embedding.PositionalArguments.is_positional_arguments")) {
-                            return false;
-                        }
-                        trace.add(new QueryMember(id, key));
-                        if (quantumObject.members.containsKey(key)) {
-                            var member = quantumObject.members.get(key);
-                            trace.add(new Member(id, key, member));
-                            return member != null;
-                        }
-                        var hasMember = random.nextBoolean();
-                        var value = hasMember ? universe.generateValue(random) : null;
-                        quantumObject.members.put(key, value);
-                        trace.add(new Member(id, key, value));
-                        return hasMember;
-                    }
+                string;
+            case Value.ObjectValue(var id) ->
+                execution.proxies().computeIfAbsent(id, k -> new ObjectProxy(id, path, execution));
+            case Value.ArrayValue(var id) ->
+                execution.proxies().computeIfAbsent(id, k -> new ArrayProxy(id, path, execution));
+        };
+    }
 
-                    @Override
-                    public Object getMember(String key) {
-                        return toPolyglotValue(quantumObject.members.get(key), universe, trace, random);
-                    }
+    // An array whose length is decided on first access and whose elements are
+    // decided when they are first read, so reading only `xs[0]` of a long
+    // array doesn't generate all of its elements.
+    private static final class ArrayProxy implements ProxyArray {
 
-                    @Override
-                    public void putMember(String key, org.graalvm.polyglot.Value value) {
-                        throw new IllegalAccessError("Can't set members.");
-                    }
+        private static final int MAX_GENERATED_LENGTH = 5;
+        private static final int LONG_LENGTH = 1000;
+        private static final double LONG_PROBABILITY = 0.02;
 
-                    @Override
-                    public Object getMemberKeys() {
-                        throw new IllegalAccessError("Can't get all member keys.");
-                    }
+        private final ObjectId id;
+        private final String path;
+        private final String elementPath;
+        private final Execution execution;
+        private final Universe.Object quantumArray;
+        // Converted elements by index, allocated once the length is known.
+        private Object[] converted;
+
+        ArrayProxy(ObjectId id, String path, Execution execution) {
+            this.id = id;
+            this.path = path;
+            this.elementPath = MemberModel.site(path, MemberModel.ELEMENT_KEY);
+            this.execution = execution;
+            this.quantumArray = execution.universe().getOrCreateObject(id);
+        }
+
+        @Override
+        public Object get(long index) {
+            if (index < 0 || index >= length()) {
+                throw new ArrayIndexOutOfBoundsException((int) Math.min(index, Integer.MAX_VALUE));
+            }
+            var i = (int) index;
+            var guestValue = converted[i];
+            if (guestValue == null) {
+                guestValue = toGuestValue(element(i), elementPath, execution);
+                converted[i] = guestValue == null ? NO_VALUE : guestValue;
+            }
+            return guestValue == NO_VALUE ? null : guestValue;
+        }
+
+        @Override
+        public void set(long index, org.graalvm.polyglot.Value value) {
+            throw new IllegalAccessError("Can't set elements.");
+        }
+
+        @Override
+        public long getSize() {
+            return length();
+        }
+
+        @Override
+        public String toString() {
+            return id.toString();
+        }
+
+        private int length() {
+            if (converted == null) {
+                if (quantumArray.length == null) {
+                    var random = execution.random();
+                    quantumArray.length = random.nextDouble() < LONG_PROBABILITY
+                            ? LONG_LENGTH
+                            : random.nextInt(MAX_GENERATED_LENGTH + 1);
+                }
+                execution.trace().add(new Length(id, quantumArray.length));
+                converted = new Object[quantumArray.length];
+            }
+            return converted.length;
+        }
+
+        private Value element(int index) {
+            var element = quantumArray.elements.get(index);
+            if (element == null) {
+                var random = execution.random();
+                var kind = execution.memberModel().sampleKind(path, MemberModel.ELEMENT_KEY, random);
+                element = execution.universe().generateValue(kind, random, execution.seeds(),
+                        execution.interesting());
+                quantumArray.elements.put(index, element);
+            }
+            // Each element is recorded once per execution, also if it was
+            // decided by an earlier run, so guest loops don't bloat the trace.
+            var decision = new Element(id, index, element);
+            if (execution.recorded().add(decision)) {
+                execution.trace().add(decision);
+            }
+            return element;
+        }
+    }
+
+    // An object whose members are decided when they are first accessed. It
+    // can be used both with members (`obj.foo`) and as a hash map
+    // (`obj['foo']`, `len(obj)`, `obj.values()`). Enumerating the entries
+    // closes the object: its remaining entries are decided at once and keys
+    // queried afterwards don't exist.
+    private static final class ObjectProxy implements ProxyObject, ProxyHashMap {
 
-                    @Override
-                    public String toString() {
-                        return id.toString();
+        private static final int MAX_GENERATED_ENTRIES = 3;
+        private static final int MAX_GENERATED_KEY_LENGTH = 8;
+
+        // GraalPy probes every foreign argument for these keys. They share a
+        // long prefix, so checking it rules out ordinary keys without hashing
+        // them.
+        private static final String GRAALPY_PROBE_PREFIX = "org.graalvm.python.embedding.";
+        private static final Set<String> GRAALPY_PROBE_KEYS = Set.of(
+                "org.graalvm.python.embedding.KeywordArguments.is_keyword_arguments",
+                "org.graalvm.python.embedding.PositionalArguments.is_positional_arguments");
+
+        private final ObjectId id;
+        private final String path;
+        private final Execution execution;
+        private final Universe.Object quantumObject;
+        // Answers and converted values of members accessed in this execution.
+        private final Map<String, Boolean> answers = new HashMap<>();
+        private final Map<String, Object> converted = new HashMap<>();
+        private boolean closed = false;
+
+        ObjectProxy(ObjectId id, String path, Execution execution) {
+            this.id = id;
+            this.path = path;
+            this.execution = execution;
+            this.quantumObject = execution.universe().getOrCreateObject(id);
+        }
+
+        @Override
+        public boolean hasMember(String key) {
+            if (key.startsWith(GRAALPY_PROBE_PREFIX) && GRAALPY_PROBE_KEYS.contains(key)) {
+                return false;
+            }
+            return decide(key);
+        }
+
+        @Override
+        public Object getMember(String key) {
+            var guestValue = converted.get(key);
+            if (guestValue == null) {
+                var member = quantumObject.members.get(key);
+                if (member == null && !quantumObject.members.containsKey(key)) {
+                    // Not decided yet, so it may still come to exist.
+                    return null;
+                }
+                guestValue = member == null ? null : toGuestValue(member, MemberModel.site(path, key), execution);
+                converted.put(key, guestValue == null ? NO_VALUE : guestValue);
+            }
+            return guestValue == NO_VALUE ? null : guestValue;
+        }
+
+        @Override
+        public void putMember(String key, org.graalvm.polyglot.Value value) {
+            throw new IllegalAccessError("Can't set members.");
+        }
+
+        @Override
+        public Object getMemberKeys() {
+            throw new IllegalAccessError("Can't get all member keys.");
+        }
+
+        @Override
+        public long getHashSize() {
+            close();
+            return quantumObject.length;
+        }
+
+        @Override
+        public boolean hasHashEntry(org.graalvm.polyglot.Value key) {
+            return key.isString() && decide(key.asString());
+        }
+
+        @Override
+        public Object getHashValue(org.graalvm.polyglot.Value key) {
+            return key.isString() ? getMember(key.asString()) : null;
+        }
+
+        @Override
+        public void putHashEntry(org.graalvm.polyglot.Value key, org.graalvm.polyglot.Value value) {
+            throw new IllegalAccessError("Can't set entries.");
+        }
+
+        @Override
+        public Object getHashEntriesIterator() {
+            close();
+            var entries = new ArrayList<Object>();
+            for (var key : presentKeys()) {
+                entries.add(ProxyArray.fromArray(key, getMember(key)));
+            }
+            return ProxyIterator.from(entries.iterator());
+        }
+
+        @Override
+        public String toString() {
+            return id.toString();
+        }
+
+        // Repeated queries of the same key are answered from the cache
+        // without touching the trace; `Trace.deduplicate` would drop them
+        // anyway.
+        private boolean decide(String key) {
+            var answer = answers.get(key);
+            if (answer != null) {
+                return answer;
+            }
+            var trace = execution.trace();
+            trace.add(new QueryMember(id, key));
+            Value value;
+            if (quantumObject.members.containsKey(key)) {
+                value = quantumObject.members.get(key);
+            } else {
+                value = null;
+                if (!closed) {
+                    var kind = execution.memberModel().sample(path, key, execution.seeds(), execution.random());
+                    if (kind != null) {
+                        value = execution.universe().generateValue(kind, execution.random(), execution.seeds(),
+                                execution.interesting());
                     }
-                });
+                }
+                quantumObject.members.put(key, value);
             }
-        };
+            record(new Member(id, key, value));
+            answer = value != null;
+            answers.put(key, answer);
+            return answer;
+        }
+
+        private void record(Member member) {
+            execution.recorded().add(member);
+            execution.trace().add(member);
+        }
+
+        // Decides all entries of this object. Members that already exist are
+        // recorded again so that the trace reproduces them. The recorded
+        // length is the number of entries the object ends up with: a length
+        // decided earlier, e.g. by rethinking it, is raised to the keys that
+        // already exist, and new keys are generated up to it.
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            var random = execution.random();
+            var present = presentKeys();
+            var existing = present.size();
+            var length = quantumObject.length != null
+                    ? quantumObject.length
+                    : existing + random.nextInt(MAX_GENERATED_ENTRIES + 1);
+            var generated = new ArrayList<Member>();
+            var attempts = 0;
+            while (present.size() < length && attempts++ < 10 * MAX_GENERATED_ENTRIES) {
+                var key = generateKey();
+                if (quantumObject.members.containsKey(key)) {
+                    continue;
+                }
+                var kind = execution.memberModel().sampleKind(path, key, random);
+                var value = execution.universe().generateValue(kind, random, execution.seeds(),
+                        execution.interesting());
+                quantumObject.members.put(key, value);
+                generated.add(new Member(id, key, value));
+                answers.put(key, true);
+                present.add(key);
+            }
+            quantumObject.length = present.size();
+            execution.trace().add(new Length(id, quantumObject.length));
+            for (var key : present.subList(0, existing)) {
+                var member = new Member(id, key, quantumObject.members.get(key));
+                if (!execution.recorded().contains(member)) {
+                    record(member);
+                }
+                answers.put(key, true);
+            }
+            for (var member : generated) {
+                record(member);
+            }
+        }
+
+        private List<String> presentKeys() {
+            var keys = new ArrayList<String>();
+            for (var member : quantumObject.members.entrySet()) {
+                if (member.getValue() != null) {
+                    keys.add(member.getKey());
+                }
+            }
+            return keys;
+        }
+
+        private String generateKey() {
+            var random = execution.random();
+            var seeds = execution.seeds();
+            if (seeds.hasKeys() && random.nextDouble() < Seeds.KEY_EXISTS_PROBABILITY) {
+                return seeds.pickKey(random);
+            }
+            var length = 1 + random.nextInt(MAX_GENERATED_KEY_LENGTH);
+            var sb = new StringBuilder(length);
+            for (var i = 0; i < length; i++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            return sb.toString();
+        }
     }
 }
@@ -0,0 +1,117 @@
+package de.hpi.swa.generator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// A dictionary of literals that appear in the code under test. Generated
+// values are biased towards these so that branches comparing against
+// constants (`x == "test"`, `a.foo < 10`, `point['lat']`) are hit quickly.
+public class Seeds {
+
+    // Probability of picking a seed instead of a uniformly random value.
+    public static final double USE_PROBABILITY = 0.3;
+    // Probability that a member with a mined key exists.
+    public static final double KEY_EXISTS_PROBABILITY = 0.8;
+
+    private static final int MAX_STRING_LENGTH = 64;
+
+    private final List<String> strings = new ArrayList<>();
+    private final List<Integer> ints = new ArrayList<>();
+    private final List<java.lang.Double> doubles = new ArrayList<>();
+    private final List<String> keys = new ArrayList<>();
+    private final Set<String> keySet = new HashSet<>();
+    private final Set<Object> seen = new HashSet<>();
+
+    public synchronized void addString(String string) {
+        if (string.length() <= MAX_STRING_LENGTH && seen.add(string)) {
+            strings.add(string);
+        }
+    }
+
+    public synchronized void addNumber(String literal) {
+        try {
+            if (literal.contains(".") || literal.contains("e") || literal.contains("E")) {
+                addDouble(java.lang.Double.parseDouble(literal));
+            } else {
+                var number = Long.parseLong(literal);
+                if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                    // Neighbours help with `<`, `<=` and off-by-one comparisons.
+                    addInt((int) number);
+                    if (number > Integer.MIN_VALUE) {
+                        addInt((int) number - 1);
+                    }
+                    if (number < Integer.MAX_VALUE) {
+                        addInt((int) number + 1);
+                    }
+                } else {
+                    addDouble((double) number);
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Not a literal we understand, e.g. hex or with underscores.
+        }
+    }
+
+    private void addInt(int value) {
+        if (seen.add(value)) {
+            ints.add(value);
+        }
+    }
+
+    private void addDouble(double value) {
+        if (seen.add(value)) {
+            doubles.add(value);
+        }
+    }
+
+    public synchronized void addKey(String key) {
+        if (keySet.add(key)) {
+            keys.add(key);
+        }
+    }
+
+    public synchronized boolean isKey(String key) {
+        return keySet.contains(key);
+    }
+
+    public synchronized boolean hasKeys() {
+        return !keys.isEmpty();
+    }
+
+    public synchronized String pickKey(Random random) {
+        return keys.get(random.nextInt(keys.size()));
+    }
+
+    public synchronized boolean hasStrings() {
+        return !strings.isEmpty();
+    }
+
+    public synchronized boolean hasInts() {
+        return !ints.isEmpty();
+    }
+
+    public synchronized boolean hasDoubles() {
+        return !doubles.isEmpty();
+    }
+
+    public synchronized String pickString(Random random) {
+        return strings.get(random.nextInt(strings.size()));
+    }
+
+    public synchronized int pickInt(Random random) {
+        return ints.get(random.nextInt(ints.size()));
+    }
+
+    public synchronized double pickDouble(Random random) {
+        return doubles.get(random.nextInt(doubles.size()));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Seeds{" + strings.size() + " strings, " + ints.size() + " ints, " + doubles.size() + " doubles, "
+                + keys.size() + " keys}";
+    }
+}
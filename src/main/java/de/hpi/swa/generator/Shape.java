@@ -1,13 +1,38 @@
 package de.hpi.swa.generator;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
 
 import de.hpi.swa.generator.Value.ObjectId;
 
+// The structure of a value, independent of the universe it lives in. Objects,
+// arrays and arguments are canonical: structurally equal shapes are the same
+// instance (see ShapeTable), with their hash computed once, so that they are
+// cheap keys and compare by reference. Only the table compares their
+// structure. Primitive shapes are plain records.
 public sealed interface Shape {
+    // Primitive shapes have no state, so these are shared instead of
+    // allocating one per value.
+    Null NULL = new Null();
+    Boolean BOOLEAN = new Boolean();
+    Int INT = new Int();
+    Double DOUBLE = new Double();
+    StringShape STRING = new StringShape();
+
     record Null() implements Shape {
+        @Override
+        public int hashCode() {
+            return 1;
+        }
+
         @Override
         public String toString() {
             return "null";
@@ -15,6 +40,11 @@ public sealed interface Shape {
     }
 
     record Boolean() implements Shape {
+        @Override
+        public int hashCode() {
+            return 2;
+        }
+
         @Override
         public String toString() {
             return "boolean";
@@ -22,6 +52,11 @@ public sealed interface Shape {
     }
 
     record Int() implements Shape {
+        @Override
+        public int hashCode() {
+            return 3;
+        }
+
         @Override
         public String toString() {
             return "int";
@@ -29,6 +64,11 @@ public sealed interface Shape {
     }
 
     record Double() implements Shape {
+        @Override
+        public int hashCode() {
+            return 4;
+        }
+
         @Override
         public String toString() {
             return "double";
@@ -36,114 +76,193 @@ public sealed interface Shape {
     }
 
     record StringShape() implements Shape {
+        @Override
+        public int hashCode() {
+            return 5;
+        }
+
         @Override
         public String toString() {
             return "string";
         }
     }
 
-    record ObjectShape(ObjectId id, Universe universe) implements Shape {
-        public ObjectShape {
-            if (universe.get(id) == null) {
-                throw new IllegalArgumentException("ObjectId " + id + " does not exist in the universe");
-            }
+    // The shapes of the present members of an object, by key. Absent members
+    // and the id of the object are not part of its shape.
+    final class ObjectShape implements Shape {
+        // Sorted, with the shapes of the members at the same indices
+        private final String[] keys;
+        private final Shape[] members;
+        private final int hash;
+        private String string;
+
+        ObjectShape(Map<String, Shape> members) {
+            var sorted = new TreeMap<>(members);
+            this.keys = sorted.keySet().toArray(String[]::new);
+            this.members = sorted.values().toArray(Shape[]::new);
+            this.hash = 31 * Arrays.hashCode(keys) + Arrays.hashCode(this.members);
         }
 
-        public Set<String> keys() {
-            var obj = universe.get(id);
-            return obj.members.entrySet().stream()
-                    .filter(entry -> entry.getValue() != null)
-                    .map(entry -> entry.getKey())
-                    .collect(Collectors.toSet());
+        public List<String> keys() {
+            return Collections.unmodifiableList(Arrays.asList(keys));
         }
 
         public Shape at(String key) {
-            var obj = universe.get(id);
-            var value = obj.members.get(key);
-            if (value == null) {
-                return null;
-            } else {
-                return Shape.fromValue(value, universe);
-            }
+            var index = Arrays.binarySearch(keys, key);
+            return index < 0 ? null : members[index];
         }
 
         @Override
         public String toString() {
-            var obj = universe.get(id);
-            List<String> memberShapes = obj.members.entrySet().stream()
-                    .filter(e -> e.getValue() != null)
-                    .map(e -> e.getKey() + ": " + at(e.getKey()).toString())
-                    .sorted()
-                    .toList();
-            return "{" + String.join(", ", memberShapes) + "}";
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (!(obj instanceof ObjectShape other))
-                return false;
-
-            // Compare only the id and the structure of the object, not the universe
-            // reference
-            if (!this.id.equals(other.id))
-                return false;
-
-            var thisObj = this.universe.get(this.id);
-            var otherObj = other.universe.get(other.id);
-
-            if (thisObj == null && otherObj == null)
-                return true;
-            if (thisObj == null || otherObj == null)
-                return false;
-
-            if (!thisObj.members.keySet().equals(otherObj.members.keySet()))
-                return false;
-
-            for (String key : thisObj.members.keySet()) {
-                Shape thisShape = at(key);
-                Shape otherShape = other.at(key);
-                if (thisShape == null && otherShape == null)
-                    continue;
-                if (thisShape == null || otherShape == null)
-                    return false;
-                if (!thisShape.equals(otherShape))
-                    return false;
+            if (string == null) {
+                var memberShapes = new ArrayList<String>(keys.length);
+                for (var i = 0; i < keys.length; i++) {
+                    memberShapes.add(keys[i] + ": " + members[i]);
+                }
+                string = "{" + String.join(", ", memberShapes) + "}";
             }
+            return string;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        // Members are canonical, so comparing them is cheap.
+        boolean sameStructure(Shape shape) {
+            return shape instanceof ObjectShape other && hash == other.hash && Arrays.equals(keys, other.keys)
+                    && Arrays.equals(members, other.members);
+        }
+    }
+
+    // The shapes of the decided elements of an array.
+    final class ArrayShape implements Shape {
+        // Sorted by their string, so that iterating them is deterministic
+        private final Set<Shape> elements;
+        private final int hash;
+        private String string;
 
-            return true;
+        ArrayShape(Set<Shape> elements) {
+            var sorted = new ArrayList<>(elements);
+            sorted.sort(Comparator.comparing(Shape::toString));
+            this.elements = Collections.unmodifiableSet(new LinkedHashSet<>(sorted));
+            this.hash = elements.hashCode();
+        }
+
+        public Set<Shape> elements() {
+            return elements;
+        }
+
+        @Override
+        public String toString() {
+            if (string == null) {
+                string = "[" + String.join(" | ", elements.stream().map(Shape::toString).toList()) + "]";
+            }
+            return string;
         }
 
         @Override
         public int hashCode() {
-            var obj = universe.get(id);
-            if (obj == null)
-                return id.hashCode();
-
-            int result = id.hashCode();
-            for (String key : obj.members.keySet()) {
-                Shape shape = at(key);
-                result = 31 * result + (shape != null ? shape.hashCode() : 0);
+            return hash;
+        }
+
+        boolean sameStructure(Shape shape) {
+            return shape instanceof ArrayShape other && hash == other.hash && elements.equals(other.elements);
+        }
+    }
+
+    // The shapes of all arguments of a call with more or less than one
+    // argument. Single arguments just have the shape of their value.
+    final class ArgumentsShape implements Shape {
+        private final List<Shape> args;
+        private final int hash;
+        private String string;
+
+        ArgumentsShape(List<Shape> args) {
+            this.args = List.copyOf(args);
+            this.hash = this.args.hashCode();
+        }
+
+        public List<Shape> args() {
+            return args;
+        }
+
+        @Override
+        public String toString() {
+            if (string == null) {
+                string = "(" + String.join(", ", args.stream().map(Shape::toString).toList()) + ")";
             }
-            return result;
+            return string;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        boolean sameStructure(Shape shape) {
+            return shape instanceof ArgumentsShape other && hash == other.hash && args.equals(other.args);
         }
     }
 
+    public static Shape fromArgs(List<Value> args, Universe universe) {
+        var visiting = new HashSet<ObjectId>();
+        if (args.size() == 1) {
+            return fromValue(args.get(0), universe, visiting);
+        }
+        var shapes = new ArrayList<Shape>(args.size());
+        for (var arg : args) {
+            shapes.add(fromValue(arg, universe, visiting));
+        }
+        return ShapeTable.intern(new ArgumentsShape(shapes));
+    }
+
     public static Shape fromValue(Value value, Universe universe) {
+        return fromValue(value, universe, new HashSet<>());
+    }
+
+    // Objects that contain themselves get the shape of an empty object at the
+    // point where they repeat.
+    private static Shape fromValue(Value value, Universe universe, Set<ObjectId> visiting) {
         return switch (value) {
             case Value.Null v ->
-                new Shape.Null();
+                Shape.NULL;
             case Value.Boolean v ->
-                new Shape.Boolean();
+                Shape.BOOLEAN;
             case Value.Int v ->
-                new Shape.Int();
+                Shape.INT;
             case Value.Double v ->
-                new Shape.Double();
+                Shape.DOUBLE;
             case Value.StringValue v ->
-                new Shape.StringShape();
-            case Value.ObjectValue objVal ->
-                new Shape.ObjectShape(objVal.id(), universe);
+                Shape.STRING;
+            case Value.ObjectValue objVal -> {
+                var object = universe.get(objVal.id());
+                if (object == null) {
+                    throw new IllegalArgumentException("ObjectId " + objVal.id() + " does not exist in the universe");
+                }
+                var members = new TreeMap<String, Shape>();
+                if (visiting.add(objVal.id())) {
+                    for (var member : object.members.entrySet()) {
+                        if (member.getValue() != null) {
+                            members.put(member.getKey(), fromValue(member.getValue(), universe, visiting));
+                        }
+                    }
+                    visiting.remove(objVal.id());
+                }
+                yield ShapeTable.intern(new ObjectShape(members));
+            }
+            case Value.ArrayValue arrVal -> {
+                var quantumArray = universe.get(arrVal.id());
+                var elements = new HashSet<Shape>();
+                if (quantumArray != null && visiting.add(arrVal.id())) {
+                    for (var element : quantumArray.elements.values()) {
+                        elements.add(fromValue(element, universe, visiting));
+                    }
+                    visiting.remove(arrVal.id());
+                }
+                yield ShapeTable.intern(new ArrayShape(elements));
+            }
         };
     }
 }
@@ -0,0 +1,70 @@
+package de.hpi.swa.generator;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The canonical instances of object, array and arguments shapes. A new shape
+// is looked up by its hash and compared by its structure, which is cheap
+// because its parts are canonical already, and replaced by the instance that
+// was there first. Canonical shapes compare by reference everywhere else.
+// Shapes that are no longer referenced anywhere are dropped, so that a long
+// running server doesn't keep the shapes of earlier campaigns.
+final class ShapeTable {
+
+    private static final Map<Integer, List<Entry>> shapes = new HashMap<>();
+    private static final ReferenceQueue<Shape> collected = new ReferenceQueue<>();
+
+    private static final class Entry extends WeakReference<Shape> {
+        final int hash;
+
+        Entry(Shape shape) {
+            super(shape, collected);
+            this.hash = shape.hashCode();
+        }
+    }
+
+    private ShapeTable() {
+    }
+
+    // Shapes of different classes never have the same structure, so the
+    // canonical instance has the class of the given one.
+    @SuppressWarnings("unchecked")
+    static synchronized <S extends Shape> S intern(S shape) {
+        expunge();
+        var bucket = shapes.computeIfAbsent(shape.hashCode(), hash -> new ArrayList<>(1));
+        for (var entry : bucket) {
+            var canonical = entry.get();
+            if (canonical != null && sameStructure(canonical, shape)) {
+                return (S) canonical;
+            }
+        }
+        bucket.add(new Entry(shape));
+        return shape;
+    }
+
+    private static boolean sameStructure(Shape canonical, Shape shape) {
+        return switch (canonical) {
+            case Shape.ObjectShape object -> object.sameStructure(shape);
+            case Shape.ArrayShape array -> array.sameStructure(shape);
+            case Shape.ArgumentsShape arguments -> arguments.sameStructure(shape);
+            default -> canonical.equals(shape);
+        };
+    }
+
+    private static void expunge() {
+        for (var reference = collected.poll(); reference != null; reference = collected.poll()) {
+            var entry = (Entry) reference;
+            var bucket = shapes.get(entry.hash);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) {
+                    shapes.remove(entry.hash);
+                }
+            }
+        }
+    }
+}
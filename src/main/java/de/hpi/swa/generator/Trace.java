@@ -1,7 +1,10 @@
 package de.hpi.swa.generator;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import de.hpi.swa.generator.Trace.TraceEntry.Decision;
@@ -18,7 +21,8 @@ public class Trace {
         }
     }
 
-    public record Call(Value arg) implements TraceEntry.Decision {
+    // The arguments the function is called with, one per parameter.
+    public record Call(List<Value> args) implements TraceEntry.Decision {
 
     }
 
@@ -30,6 +34,16 @@ public class Trace {
 
     }
 
+    // The number of entries an object has when it is enumerated, or the
+    // length of an array.
+    public record Length(ObjectId id, int length) implements TraceEntry.Decision {
+
+    }
+
+    public record Element(ObjectId id, int index, Value value) implements TraceEntry.Decision {
+
+    }
+
     public record Return(String typeName, String value) implements TraceEntry.Observation {
 
     }
@@ -38,6 +52,13 @@ public class Trace {
 
     }
 
+    // The execution didn't finish within the given time.
+    public record Timeout(long millis) implements TraceEntry.Observation {
+
+    }
+
+    private static final int MAX_RETHOUGHT_LENGTH = 5;
+
     public final ArrayList<TraceEntry> entries = new ArrayList<>();
 
     public void add(TraceEntry entry) {
@@ -74,8 +95,15 @@ public class Trace {
                 }
             }
             switch (entry) {
-                case Call(var arg) ->
-                    sb.append("call with ").append(arg);
+                case Call(var args) -> {
+                    sb.append("call with ");
+                    for (var i = 0; i < args.size(); i++) {
+                        if (i > 0) {
+                            sb.append(", ");
+                        }
+                        sb.append(args.get(i));
+                    }
+                }
                 case QueryMember(var object, var key) ->
                     sb.append(object).append(".").append(key);
                 case Member(var object, var key, var value) -> {
@@ -86,10 +114,16 @@ public class Trace {
                         sb.append(value);
                     }
                 }
+                case Length(var object, var length) ->
+                    sb.append(object).append(" has ").append(length).append(" entries");
+                case Element(var object, var index, var value) ->
+                    sb.append(object).append("[").append(index).append("] = ").append(value);
                 case Return ret ->
                     sb.append("return ").append(ret.value()).append(" (").append(ret.typeName()).append(")");
                 case Crash(var message) ->
                     sb.append("crash ").append(message);
+                case Timeout(var millis) ->
+                    sb.append("timeout after ").append(millis).append(" ms");
             }
 
             if (colored) {
@@ -112,8 +146,30 @@ public class Trace {
         var universe = new Universe();
         for (var entry : entries) {
             switch (entry) {
+                case Call(var args) -> {
+                    for (var arg : args) {
+                        var id = idOf(arg);
+                        if (id != null) {
+                            universe.getOrCreateObject(id);
+                        }
+                    }
+                }
                 case Member(var id, var key, var value) -> {
                     universe.getOrCreateObject(id).members.put(key, value);
+                    var child = idOf(value);
+                    if (child != null) {
+                        universe.getOrCreateObject(child);
+                    }
+                }
+                case Length(var id, var length) -> {
+                    universe.getOrCreateObject(id).length = length;
+                }
+                case Element(var id, var index, var value) -> {
+                    universe.getOrCreateObject(id).elements.put(index, value);
+                    var child = idOf(value);
+                    if (child != null) {
+                        universe.getOrCreateObject(child);
+                    }
                 }
                 default -> {
                 }
@@ -122,11 +178,52 @@ public class Trace {
         return universe;
     }
 
+    // The access path of each object, e.g. `arg0.foo.bar`.
+    public Map<ObjectId, String> objectPaths() {
+        var paths = new HashMap<ObjectId, String>();
+        for (var entry : entries) {
+            switch (entry) {
+                case Call(var args) -> {
+                    for (var i = 0; i < args.size(); i++) {
+                        var id = idOf(args.get(i));
+                        if (id != null) {
+                            paths.putIfAbsent(id, MemberModel.argPath(i));
+                        }
+                    }
+                }
+                case Member(var id, var key, var value) -> {
+                    var child = idOf(value);
+                    if (child != null) {
+                        paths.putIfAbsent(child, MemberModel.site(paths.getOrDefault(id, "?"), key));
+                    }
+                }
+                case Element(var id, var index, var value) -> {
+                    var child = idOf(value);
+                    if (child != null) {
+                        paths.putIfAbsent(child, MemberModel.site(paths.getOrDefault(id, "?"), MemberModel.ELEMENT_KEY));
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static ObjectId idOf(Value value) {
+        return switch (value) {
+            case Value.ObjectValue(var id) -> id;
+            case Value.ArrayValue(var id) -> id;
+            case null, default -> null;
+        };
+    }
+
     public int numDecisions() {
         return (int) entries.stream().filter(entry -> entry instanceof Decision).count();
     }
 
-    public Trace rethinkLastDecision(Random random) {
+    public Trace rethinkLastDecision(Random random, Seeds seeds, InterestingValues interesting,
+            MemberModel memberModel) {
         var decisionsToKeep = numDecisions() - 1;
         var newTrace = new Trace();
         var numDecisionsSoFar = 0;
@@ -136,10 +233,29 @@ public class Trace {
                 if (numDecisionsSoFar > decisionsToKeep) {
                     var universe = toUniverse();
                     newTrace.add(switch (entry) {
-                        case Call(var arg) ->
-                            new Call(universe.generateValue(random));
-                        case Member(var id, var key, var value) ->
-                            new Member(id, key, universe.generateValue(random));
+                        case Call(var args) -> {
+                            // Only one argument changes, so the others keep
+                            // whatever made this trace interesting.
+                            if (args.isEmpty()) {
+                                yield entry;
+                            }
+                            var newArgs = new ArrayList<>(args);
+                            newArgs.set(random.nextInt(args.size()),
+                                    universe.generateValue(random, seeds, interesting));
+                            yield new Call(newArgs);
+                        }
+                        case Member(var id, var key, var value) -> {
+                            var path = objectPaths().getOrDefault(id, "?");
+                            var kind = memberModel.sampleKind(path, key, random);
+                            yield new Member(id, key, universe.generateValue(kind, random, seeds, interesting));
+                        }
+                        case Length(var id, var length) ->
+                            new Length(id, random.nextInt(MAX_RETHOUGHT_LENGTH + 1));
+                        case Element(var id, var index, var value) -> {
+                            var path = objectPaths().getOrDefault(id, "?");
+                            var kind = memberModel.sampleKind(path, MemberModel.ELEMENT_KEY, random);
+                            yield new Element(id, index, universe.generateValue(kind, random, seeds, interesting));
+                        }
                         default ->
                             throw new UnsupportedOperationException("Not supported yet.");
                     });
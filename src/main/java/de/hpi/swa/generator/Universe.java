@@ -1,6 +1,10 @@
 package de.hpi.swa.generator;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -12,16 +16,27 @@ public class Universe {
 
     public class Object {
 
-        public final Map<String, Value> members = new HashMap<>();
+        // Insertion-ordered, so that enumerating entries is reproducible.
+        public final Map<String, Value> members = new LinkedHashMap<>();
+        // Elements of arrays by index, decided when they are first accessed.
+        public final Map<Integer, Value> elements = new HashMap<>();
+        // Number of entries once the object was enumerated or the length of
+        // the array once it was accessed, null before.
+        public Integer length = null;
     }
 
+    private int nextId = 0;
+
     public ObjectId createObject() {
-        var id = new ObjectId(objects.size());
+        var id = new ObjectId(nextId++);
         objects.put(id, new Object());
         return id;
     }
 
     public Object getOrCreateObject(ObjectId id) {
+        // Ids of a trace don't need to be contiguous, so new ids are always
+        // larger than all known ones.
+        nextId = Math.max(nextId, id.value + 1);
         objects.putIfAbsent(id, new Object());
         return objects.get(id);
     }
@@ -30,22 +45,57 @@ public class Universe {
         return objects.get(id);
     }
 
-    public Value generateValue(Random random) {
-        return switch (random.nextInt(6)) {
-            case 0 ->
+    public Map<ObjectId, Object> getObjects() {
+        return Collections.unmodifiableMap(objects);
+    }
+
+    public List<Value> generateArgs(int arity, Random random, Seeds seeds, InterestingValues interesting) {
+        var args = new ArrayList<Value>(arity);
+        for (var i = 0; i < arity; i++) {
+            args.add(generateValue(random, seeds, interesting));
+        }
+        return args;
+    }
+
+    public Value generateValue(Random random, Seeds seeds, InterestingValues interesting) {
+        var kinds = Value.Kind.values();
+        return generateValue(kinds[random.nextInt(kinds.length)], random, seeds, interesting);
+    }
+
+    public Value generateValue(Value.Kind kind, Random random, Seeds seeds, InterestingValues interesting) {
+        return switch (kind) {
+            case NULL ->
                 new Value.Null();
-            case 1 ->
+            case BOOLEAN ->
                 new Value.Boolean(random.nextBoolean());
-            case 2 ->
-                new Value.Int(random.nextInt(100));
-            case 3 ->
-                new Value.Double(random.nextDouble(100));
-            case 4 ->
-                new Value.StringValue(generateString(random));
-            case 5 ->
+            case INT -> {
+                if (interesting.shouldUse(Shape.INT, random)) {
+                    yield InterestingValues.pickInt(random);
+                }
+                yield seeds.hasInts() && random.nextDouble() < Seeds.USE_PROBABILITY
+                        ? new Value.Int(seeds.pickInt(random))
+                        : new Value.Int(random.nextInt(100));
+            }
+            case DOUBLE -> {
+                if (interesting.shouldUse(Shape.DOUBLE, random)) {
+                    yield InterestingValues.pickDouble(random);
+                }
+                yield seeds.hasDoubles() && random.nextDouble() < Seeds.USE_PROBABILITY
+                        ? new Value.Double(seeds.pickDouble(random))
+                        : new Value.Double(random.nextDouble(100));
+            }
+            case STRING -> {
+                if (interesting.shouldUse(Shape.STRING, random)) {
+                    yield InterestingValues.pickString(random);
+                }
+                yield seeds.hasStrings() && random.nextDouble() < Seeds.USE_PROBABILITY
+                        ? new Value.StringValue(seeds.pickString(random))
+                        : new Value.StringValue(generateString(random));
+            }
+            case OBJECT ->
                 new Value.ObjectValue(createObject());
-            default ->
-                throw new IllegalStateException("unreachable");
+            case ARRAY ->
+                new Value.ArrayValue(createObject());
         };
     }
 
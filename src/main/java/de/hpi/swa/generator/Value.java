@@ -30,6 +30,22 @@ public sealed interface Value {
         }
     }
 
+    enum Kind {
+        NULL, BOOLEAN, INT, DOUBLE, STRING, OBJECT, ARRAY;
+
+        public static Kind of(Value value) {
+            return switch (value) {
+                case Value.Null v -> NULL;
+                case Value.Boolean v -> BOOLEAN;
+                case Value.Int v -> INT;
+                case Value.Double v -> DOUBLE;
+                case Value.StringValue v -> STRING;
+                case Value.ObjectValue v -> OBJECT;
+                case Value.ArrayValue v -> ARRAY;
+            };
+        }
+    }
+
     record Null() implements Value {
 
         @Override
@@ -78,6 +94,16 @@ public sealed interface Value {
         }
     }
 
+    // Elements and length of arrays are stored in the universe and decided
+    // lazily, like the members of objects.
+    record ArrayValue(ObjectId id) implements Value {
+
+        @Override
+        public String toString() {
+            return id.toString();
+        }
+    }
+
     static Value fromObject(Object obj) {
         if (obj == null) {
             return new Value.Null();
@@ -97,6 +123,18 @@ public sealed interface Value {
         throw new IllegalArgumentException("Unsupported object type: " + obj.getClass());
     }
 
+    // Formats the arguments of a call, e.g. `1, "foo"`.
+    public static String formatArgs(java.util.List<Value> args, Universe universe) {
+        var builder = new StringBuilder();
+        for (var i = 0; i < args.size(); i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            format(args.get(i), universe, builder);
+        }
+        return builder.toString();
+    }
+
     public static String format(Value value, Universe universe) {
         var builder = new StringBuilder();
         format(value, universe, builder);
@@ -131,6 +169,26 @@ public sealed interface Value {
                 }
                 builder.append("}");
             }
+            case Value.ArrayValue(var id) -> {
+                var quantumArray = universe.getOrCreateObject(id);
+                if (quantumArray.length == null) {
+                    builder.append("[...]");
+                    break;
+                }
+                builder.append("[");
+                for (var i = 0; i < quantumArray.length; i++) {
+                    if (i > 0) {
+                        builder.append(", ");
+                    }
+                    var element = quantumArray.elements.get(i);
+                    if (element == null) {
+                        builder.append("?");
+                    } else {
+                        format(element, universe, builder);
+                    }
+                }
+                builder.append("]");
+            }
         }
     }
 }
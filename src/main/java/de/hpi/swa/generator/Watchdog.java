@@ -0,0 +1,100 @@
+package de.hpi.swa.generator;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.graalvm.polyglot.Context;
+
+// Bounds how long a single call into the guest may take. When the time is up,
+// the context is interrupted. If the guest doesn't react within a grace period
+// (e.g. because it is stuck in native code), the context is cancelled and has
+// to be replaced before the next execution.
+public class Watchdog {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(1);
+    private static final Duration GRACE_PERIOD = Duration.ofMillis(500);
+
+    // One timer thread serves all watchdogs. It only interrupts, it never
+    // executes guest code.
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "graalfuzz-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Context context;
+    private final Duration timeout;
+    private volatile boolean timedOut = false;
+    private volatile boolean cancelled = false;
+
+    public Watchdog(Context context, Duration timeout) {
+        this.context = context;
+        this.timeout = timeout;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    // Executes the function. If the execution takes too long, it is aborted
+    // with a PolyglotException and `timedOut()` returns true afterwards.
+    public org.graalvm.polyglot.Value execute(org.graalvm.polyglot.Value function, Object... args) {
+        return watch(() -> function.execute(args));
+    }
+
+    // Runs guest code in the context under the same time limit, e.g. an
+    // execution together with converting its result, which may call back
+    // into the guest.
+    public <T> T watch(Supplier<T> work) {
+        if (cancelled) {
+            throw new IllegalStateException("The context was cancelled after a timeout.");
+        }
+        timedOut = false;
+        var alarm = TIMER.schedule(this::fire, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        try {
+            return work.get();
+        } finally {
+            // If the alarm is already going off, wait for it so that it can't
+            // hit the next execution.
+            if (!alarm.cancel(false)) {
+                try {
+                    alarm.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException | CancellationException e) {
+                    // The alarm reports its outcome through the flags.
+                }
+            }
+        }
+    }
+
+    private void fire() {
+        timedOut = true;
+        try {
+            context.interrupt(GRACE_PERIOD);
+        } catch (TimeoutException e) {
+            cancelled = true;
+            try {
+                context.close(true);
+            } catch (IllegalStateException | org.graalvm.polyglot.PolyglotException closeError) {
+                // The context is unusable either way.
+            }
+        }
+    }
+
+    // Whether the last execution was aborted because it took too long.
+    public boolean timedOut() {
+        return timedOut;
+    }
+
+    // Whether the context had to be cancelled and can't be used anymore.
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,339 @@
+package de.hpi.swa.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.hpi.swa.analysis.ScoredRunResult;
+import de.hpi.swa.analysis.grouping.GroupKey;
+import de.hpi.swa.analysis.grouping.ResultGroup;
+import de.hpi.swa.generator.Runner;
+import de.hpi.swa.generator.Trace;
+import de.hpi.swa.generator.Value;
+
+// Encodes results in the compact binary format of `--binary` (see the README
+// for the layout). Each message is a frame with a 4-byte length. Strings are
+// interned across the whole stream: the first occurrence carries the bytes,
+// later ones only an index. Not thread-safe, a stream needs a single encoder.
+public class BinaryEncoder {
+
+    public static final int RUN = 1;
+    public static final int PROGRESS = 2;
+    public static final int ANALYSIS = 3;
+    public static final int RUN_DELTA = 4;
+    public static final int SNAPSHOT = 5;
+
+    // Strings beyond this many are written inline, so that the table of a
+    // long campaign with unique messages doesn't grow without bounds.
+    private static final int MAX_INTERNED = 1 << 16;
+    private static final int NEW_STRING = 0;
+    private static final int INLINE_STRING = 1;
+    private static final int NULL_STRING = 2;
+    private static final int FIRST_REFERENCE = 3;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+    private byte[] buffer = new byte[1 << 12];
+    private int size = 0;
+
+    public void beginFrame(int kind) {
+        size = 4;
+        writeByte(kind);
+    }
+
+    // Writes the frame with its length in front.
+    public void endFrame(OutputStream out) throws IOException {
+        var length = size - 4;
+        buffer[0] = (byte) (length >>> 24);
+        buffer[1] = (byte) (length >>> 16);
+        buffer[2] = (byte) (length >>> 8);
+        buffer[3] = (byte) length;
+        out.write(buffer, 0, size);
+    }
+
+    public void writeRun(Runner.RunResult run) {
+        var objects = run.universe().getObjects();
+        writeVarint(objects.size());
+        for (var entry : objects.entrySet()) {
+            writeVarint(entry.getKey().value);
+            var object = entry.getValue();
+            // Absent members are left out, like in the JSON output.
+            var present = 0;
+            for (var value : object.members.values()) {
+                if (value != null) {
+                    present++;
+                }
+            }
+            writeVarint(present);
+            for (var member : object.members.entrySet()) {
+                if (member.getValue() == null) {
+                    continue;
+                }
+                writeString(member.getKey());
+                writeValue(member.getValue());
+            }
+            writeVarint(object.elements.size());
+            for (var element : object.elements.entrySet()) {
+                writeVarint(element.getKey());
+                writeValue(element.getValue());
+            }
+            writeVarint(object.length == null ? 0 : object.length + 1);
+        }
+
+        writeValues(run.args());
+
+        switch (run.output()) {
+            case Runner.FunctionResult.Normal normal -> {
+                writeByte(0);
+                writeString(normal.typeName());
+                writeString(normal.value());
+            }
+            case Runner.FunctionResult.Crash crash -> {
+                writeByte(1);
+                writeString(crash.message());
+                writeVarint(crash.stackTrace().size());
+                for (var frame : crash.stackTrace()) {
+                    writeString(frame);
+                }
+            }
+            case Runner.FunctionResult.Timeout timeout -> {
+                writeByte(2);
+                writeVarint(timeout.millis());
+            }
+        }
+
+        writeVarint(run.trace().entries.size());
+        for (var entry : run.trace().entries) {
+            writeEntry(entry);
+        }
+        writeVarint(run.nanos());
+    }
+
+    // The parent is written plus one, so that 0 means none. Without a parent,
+    // the run is complete.
+    public void writeDelta(RunDelta delta) {
+        writeVarint(delta.id());
+        writeVarint(delta.parent() + 1);
+        writeVarint(delta.prefix());
+        writeVarint(delta.removed().size());
+        for (var removal : delta.removed()) {
+            writeVarint(removal.id().value);
+            writeByte((removal.object() ? 1 : 0) | (removal.length() ? 2 : 0));
+            writeVarint(removal.members().size());
+            for (var key : removal.members()) {
+                writeString(key);
+            }
+            writeVarint(removal.elements().size());
+            for (var index : removal.elements()) {
+                writeVarint(index);
+            }
+        }
+        writeRun(delta.run());
+    }
+
+    public void writeGroups(List<ResultGroup> groups) {
+        writeVarint(groups.size());
+        for (var group : groups) {
+            writeKey(group.key());
+            writeDouble(group.score());
+            writeScores(group.groupScores());
+            writeVarint(group.results().size());
+            for (ScoredRunResult result : group.results()) {
+                writeRun(result.result());
+                writeDouble(result.score());
+                writeScores(result.itemScores());
+                writeScores(result.groupScores());
+                writeKey(result.key());
+            }
+        }
+    }
+
+    private void writeEntry(Trace.TraceEntry entry) {
+        switch (entry) {
+            case Trace.Call call -> {
+                writeByte(0);
+                writeValues(call.args());
+            }
+            case Trace.QueryMember query -> {
+                writeByte(1);
+                writeVarint(query.id().value);
+                writeString(query.key());
+            }
+            case Trace.Member member -> {
+                writeByte(2);
+                writeVarint(member.id().value);
+                writeString(member.key());
+                writeValue(member.value());
+            }
+            case Trace.Length length -> {
+                writeByte(3);
+                writeVarint(length.id().value);
+                writeVarint(length.length());
+            }
+            case Trace.Element element -> {
+                writeByte(4);
+                writeVarint(element.id().value);
+                writeVarint(element.index());
+                writeValue(element.value());
+            }
+            case Trace.Return ret -> {
+                writeByte(5);
+                writeString(ret.typeName());
+                writeString(ret.value());
+            }
+            case Trace.Crash crash -> {
+                writeByte(6);
+                writeString(crash.message());
+            }
+            case Trace.Timeout timeout -> {
+                writeByte(7);
+                writeVarint(timeout.millis());
+            }
+        }
+    }
+
+    private void writeValues(List<Value> values) {
+        writeVarint(values.size());
+        for (var value : values) {
+            writeValue(value);
+        }
+    }
+
+    private void writeValue(Value value) {
+        if (value == null) {
+            // A member that doesn't exist
+            writeByte(8);
+            return;
+        }
+        switch (value) {
+            case Value.Null() -> writeByte(0);
+            case Value.Boolean bool -> writeByte(bool.value() ? 2 : 1);
+            case Value.Int intVal -> {
+                writeByte(3);
+                writeSigned(intVal.value());
+            }
+            case Value.Double dbl -> {
+                writeByte(4);
+                writeDouble(dbl.value());
+            }
+            case Value.StringValue str -> {
+                writeByte(5);
+                writeString(str.value());
+            }
+            case Value.ObjectValue obj -> {
+                writeByte(6);
+                writeVarint(obj.id().value);
+            }
+            case Value.ArrayValue arr -> {
+                writeByte(7);
+                writeVarint(arr.id().value);
+            }
+        }
+    }
+
+    private void writeKey(GroupKey key) {
+        switch (key) {
+            case GroupKey.InputShape inputShape -> {
+                writeByte(0);
+                writeString(String.valueOf(inputShape.shape()));
+            }
+            case GroupKey.PathHash pathHash -> {
+                writeByte(1);
+                writeSigned(pathHash.hash());
+                writeVarint(pathHash.length());
+            }
+            case GroupKey.OutputShape outputShape -> {
+                writeByte(2);
+                writeString(outputShape.value());
+            }
+            case GroupKey.ExceptionType exceptionType -> {
+                writeByte(3);
+                writeString(exceptionType.value());
+            }
+            case GroupKey.Generic generic -> {
+                writeByte(4);
+                writeString(generic.value());
+            }
+            case GroupKey.Composite composite -> {
+                writeByte(5);
+                writeVarint(composite.parts().size());
+                for (var part : composite.parts()) {
+                    writeKey(part);
+                }
+            }
+        }
+    }
+
+    private void writeScores(Map<String, Double> scores) {
+        if (scores == null) {
+            writeVarint(0);
+            return;
+        }
+        writeVarint(scores.size());
+        for (var score : scores.entrySet()) {
+            writeString(score.getKey());
+            writeDouble(score.getValue() == null ? Double.NaN : score.getValue());
+        }
+    }
+
+    public void writeString(String string) {
+        if (string == null) {
+            writeVarint(NULL_STRING);
+            return;
+        }
+        var index = strings.get(string);
+        if (index != null) {
+            writeVarint(FIRST_REFERENCE + index);
+            return;
+        }
+        if (strings.size() < MAX_INTERNED) {
+            strings.put(string, strings.size());
+            writeVarint(NEW_STRING);
+        } else {
+            writeVarint(INLINE_STRING);
+        }
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(bytes.length);
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    public void writeByte(int value) {
+        ensure(1);
+        buffer[size++] = (byte) value;
+    }
+
+    // Unsigned LEB128
+    public void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    // Zigzag, so that small negative numbers stay short
+    public void writeSigned(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    // Big-endian IEEE 754
+    public void writeDouble(double value) {
+        ensure(8);
+        var bits = Double.doubleToRawLongBits(value);
+        for (var shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (bits >>> shift);
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (size + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package de.hpi.swa.serialization;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import de.hpi.swa.generator.Runner;
+import de.hpi.swa.generator.Trace;
+import de.hpi.swa.generator.Universe;
+import de.hpi.swa.generator.Value;
+
+// Numbers the runs of a stream and turns each into a delta against an earlier
+// run it shares a trace prefix with. Most runs come from rethinking the last
+// decision of a pool entry, so they repeat the entry's trace up to that
+// decision. Such a trace, without its last decision and what follows, is the
+// stem of the entry. A new run looks up the stems ending just before each of
+// its decisions, from the last one, and so finds its pool parent or a sibling
+// with the same stem. Runs that share nothing with an earlier run are kept
+// complete, and so are runs whose stem was last seen more than
+// RunDelta.MAX_PARENT_DISTANCE runs ago. Stems are looked up by a hash that
+// is computed for all prefixes of a trace in one pass, so encoding stays
+// linear in the length of the trace. Not thread-safe, a stream needs a single
+// encoder.
+public class DeltaEncoder {
+
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private record Emitted(int id, Runner.RunResult run) {
+    }
+
+    // The first `length` entries of the trace of the emitted run.
+    private record Stem(int length, Emitted emitted) {
+
+        // Hashes only select the stem, this rules out collisions.
+        boolean isPrefixOf(List<Trace.TraceEntry> entries) {
+            var own = emitted.run().trace().entries;
+            if (own == entries) {
+                return true;
+            }
+            for (var i = 0; i < length; i++) {
+                if (!own.get(i).equals(entries.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // The stem of the latest run with it, by the hash of the stem. Ordered by
+    // id and limited to the runs that can still be parents. A stem whose hash
+    // collides with another one replaces it, which only loses a parent.
+    private final LinkedHashMap<Long, Stem> stems = new LinkedHashMap<>();
+    private int nextId = 0;
+
+    public RunDelta encode(Runner.RunResult run) {
+        var id = nextId++;
+        var entries = run.trace().entries;
+        var hashes = prefixHashes(entries);
+        var parent = findParent(entries, hashes);
+        remember(new Emitted(id, run), hashes);
+        forget(nextId - RunDelta.MAX_PARENT_DISTANCE);
+
+        var prefix = parent == null ? 0 : commonPrefix(parent.run().trace().entries, entries);
+        if (prefix == 0) {
+            return new RunDelta(id, RunDelta.NO_PARENT, 0, List.of(), run);
+        }
+
+        var suffix = new Trace();
+        for (var i = prefix; i < entries.size(); i++) {
+            suffix.add(entries.get(i));
+        }
+        var removed = new ArrayList<RunDelta.Removal>();
+        var universe = diff(parent.run().universe(), run.universe(), removed);
+        return new RunDelta(id, parent.id(), prefix, removed,
+                new Runner.RunResult(universe, run.args(), run.output(), suffix, run.nanos()));
+    }
+
+    // The hashes of all prefixes of the entries, by length.
+    private static long[] prefixHashes(List<Trace.TraceEntry> entries) {
+        var hashes = new long[entries.size() + 1];
+        for (var i = 0; i < entries.size(); i++) {
+            hashes[i + 1] = hashes[i] * HASH_MULTIPLIER + entries.get(i).hashCode();
+        }
+        return hashes;
+    }
+
+    private Emitted findParent(List<Trace.TraceEntry> entries, long[] hashes) {
+        for (var i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i) instanceof Trace.TraceEntry.Decision) {
+                var stem = stems.get(hashes[i]);
+                if (stem != null && stem.length() == i && stem.isPrefixOf(entries)) {
+                    return stem.emitted();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void remember(Emitted emitted, long[] hashes) {
+        var entries = emitted.run().trace().entries;
+        for (var i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i) instanceof Trace.TraceEntry.Decision) {
+                // Removed first, so that the stem moves to the end.
+                stems.remove(hashes[i]);
+                stems.put(hashes[i], new Stem(i, emitted));
+                return;
+            }
+        }
+    }
+
+    // Drops the stems of runs before `id`.
+    private void forget(int id) {
+        var iterator = stems.values().iterator();
+        while (iterator.hasNext() && iterator.next().emitted().id() < id) {
+            iterator.remove();
+        }
+    }
+
+    private static int commonPrefix(List<Trace.TraceEntry> a, List<Trace.TraceEntry> b) {
+        var length = 0;
+        while (length < a.size() && length < b.size() && a.get(length).equals(b.get(length))) {
+            length++;
+        }
+        return length;
+    }
+
+    // Returns what the child has that differs from the parent, and adds what
+    // only the parent has to `removed`.
+    private static Universe diff(Universe parent, Universe child, List<RunDelta.Removal> removed) {
+        var result = new Universe();
+        for (var entry : parent.getObjects().entrySet()) {
+            if (child.get(entry.getKey()) == null) {
+                removed.add(new RunDelta.Removal(entry.getKey(), true, List.of(), List.of(), false));
+            }
+        }
+        for (var entry : child.getObjects().entrySet()) {
+            var id = entry.getKey();
+            var after = entry.getValue();
+            var before = parent.get(id);
+            if (before != null && !keepsOrder(before, after)) {
+                // Members are ordered, so an object whose members were
+                // reordered is replaced as a whole.
+                removed.add(new RunDelta.Removal(id, true, List.of(), List.of(), false));
+                before = null;
+            }
+            if (before == null) {
+                var object = result.getOrCreateObject(id);
+                putPresent(object.members, after.members);
+                object.elements.putAll(after.elements);
+                object.length = after.length;
+                continue;
+            }
+
+            var members = new ArrayList<String>();
+            for (var member : before.members.entrySet()) {
+                if (member.getValue() != null && after.members.get(member.getKey()) == null) {
+                    members.add(member.getKey());
+                }
+            }
+            var elements = new ArrayList<Integer>();
+            for (var index : before.elements.keySet()) {
+                if (!after.elements.containsKey(index)) {
+                    elements.add(index);
+                }
+            }
+            var length = before.length != null && after.length == null;
+            if (!members.isEmpty() || !elements.isEmpty() || length) {
+                removed.add(new RunDelta.Removal(id, false, members, elements, length));
+            }
+
+            Universe.Object object = null;
+            for (var member : after.members.entrySet()) {
+                if (member.getValue() == null || member.getValue().equals(before.members.get(member.getKey()))) {
+                    continue;
+                }
+                if (object == null) {
+                    object = result.getOrCreateObject(id);
+                }
+                object.members.put(member.getKey(), member.getValue());
+            }
+            for (var element : after.elements.entrySet()) {
+                if (!differs(before.elements, element.getKey(), element.getValue())) {
+                    continue;
+                }
+                if (object == null) {
+                    object = result.getOrCreateObject(id);
+                }
+                object.elements.put(element.getKey(), element.getValue());
+            }
+            if (after.length != null && !after.length.equals(before.length)) {
+                if (object == null) {
+                    object = result.getOrCreateObject(id);
+                }
+                object.length = after.length;
+            }
+        }
+        return result;
+    }
+
+    private static <K> boolean differs(Map<K, Value> before, K key, Value value) {
+        return !before.containsKey(key) || !Objects.equals(before.get(key), value);
+    }
+
+    static void putPresent(Map<String, Value> target, Map<String, Value> members) {
+        for (var member : members.entrySet()) {
+            if (member.getValue() != null) {
+                target.put(member.getKey(), member.getValue());
+            }
+        }
+    }
+
+    // Whether the present members both objects have come first in the child,
+    // in the same order, so that updating the parent's members in place and
+    // appending the new ones reproduces the child's order.
+    private static boolean keepsOrder(Universe.Object before, Universe.Object after) {
+        var kept = before.members.entrySet().stream()
+                .filter(member -> member.getValue() != null && after.members.get(member.getKey()) != null)
+                .iterator();
+        for (var member : after.members.entrySet()) {
+            if (member.getValue() == null) {
+                continue;
+            }
+            if (!kept.hasNext()) {
+                return true;
+            }
+            if (!member.getKey().equals(kept.next().getKey())) {
+                return false;
+            }
+        }
+        return !kept.hasNext();
+    }
+}
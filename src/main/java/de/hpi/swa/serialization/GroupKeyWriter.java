@@ -0,0 +1,51 @@
+package de.hpi.swa.serialization;
+
+import com.google.gson.stream.JsonWriter;
+import de.hpi.swa.analysis.grouping.GroupKey;
+import java.io.IOException;
+
+// Group keys are only ever written, so this is registered through
+// GsonConfig.writeOnly instead of as a full TypeAdapter.
+public class GroupKeyWriter {
+
+    public static void write(JsonWriter out, GroupKey src) throws IOException {
+        out.beginObject();
+
+        if (src instanceof GroupKey.InputShape inputShape) {
+            out.name("type").value("InputShape");
+            // Like in the binary format, e.g. `({a: int}, string)`
+            out.name("shape");
+            var shape = inputShape.shape();
+            if (shape == null) {
+                out.nullValue();
+            } else {
+                out.value(shape.toString());
+            }
+        } else if (src instanceof GroupKey.PathHash pathHash) {
+            out.name("type").value("PathHash");
+            out.name("hash").value(pathHash.hash());
+            out.name("length").value(pathHash.length());
+        } else if (src instanceof GroupKey.OutputShape outputShape) {
+            out.name("type").value("OutputShape");
+            out.name("value").value(outputShape.value());
+        } else if (src instanceof GroupKey.ExceptionType exceptionType) {
+            out.name("type").value("ExceptionType");
+            out.name("value").value(exceptionType.value());
+        } else if (src instanceof GroupKey.Generic generic) {
+            out.name("type").value("Generic");
+            out.name("value").value(generic.value());
+        } else if (src instanceof GroupKey.Composite composite) {
+            out.name("type").value("Composite");
+            out.name("parts");
+            out.beginArray();
+            for (GroupKey part : composite.parts()) {
+                write(out, part);
+            }
+            out.endArray();
+        } else {
+            out.name("type").value("Unknown");
+        }
+
+        out.endObject();
+    }
+}
@@ -1,7 +1,15 @@
 package de.hpi.swa.serialization;
 
+import java.io.IOException;
+import java.util.function.Function;
+
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import de.hpi.swa.generator.Trace;
 import de.hpi.swa.generator.Value;
@@ -18,9 +26,49 @@ public class GsonConfig {
         return builder
             .registerTypeAdapter(Double.class, new NaNAsNullAdapter())
             .registerTypeAdapter(double.class, new NaNAsNullAdapter())
-            .registerTypeAdapter(Runner.RunResult.class, new RunResultAdapter())
-            .registerTypeAdapter(Trace.TraceEntry.class, new TraceEntryAdapter())
-            .registerTypeAdapter(Value.class, new ValueAdapter())
-            .registerTypeAdapter(GroupKey.class, new GroupKeyAdapter());
+            .registerTypeAdapterFactory(exactly(Runner.RunResult.class, RunResultAdapter::new))
+            .registerTypeAdapter(Trace.TraceEntry.class, new TraceEntryAdapter().nullSafe())
+            .registerTypeAdapter(Value.class, new ValueAdapter().nullSafe())
+            .registerTypeAdapterFactory(writeOnly(GroupKey.class, GroupKeyWriter::write));
+    }
+
+    // Like registerTypeAdapter, for adapters that look up other adapters of
+    // the Gson instance.
+    private static <T> TypeAdapterFactory exactly(Class<T> type, Function<Gson, TypeAdapter<T>> create) {
+        return new TypeAdapterFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> token) {
+                return token.getRawType() == type ? (TypeAdapter<R>) create.apply(gson).nullSafe() : null;
+            }
+        };
+    }
+
+    public interface Writer<T> {
+        void write(JsonWriter out, T value) throws IOException;
+    }
+
+    // Overrides only how values of the type are written. Reading is left to
+    // whatever adapter Gson would have used without this registration.
+    private static <T> TypeAdapterFactory writeOnly(Class<T> type, Writer<T> writer) {
+        return new TypeAdapterFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> token) {
+                if (token.getRawType() != type) return null;
+                var factory = this;
+                return new TypeAdapter<R>() {
+                    @Override
+                    public void write(JsonWriter out, R value) throws IOException {
+                        writer.write(out, (T) value);
+                    }
+
+                    @Override
+                    public R read(JsonReader in) throws IOException {
+                        return gson.getDelegateAdapter(factory, token).read(in);
+                    }
+                }.nullSafe();
+            }
+        };
     }
 }
@@ -0,0 +1,88 @@
+package de.hpi.swa.serialization;
+
+import java.util.HashMap;
+import java.util.List;
+
+import de.hpi.swa.generator.Runner;
+import de.hpi.swa.generator.Trace;
+import de.hpi.swa.generator.Universe;
+import de.hpi.swa.generator.Value;
+
+// A run as the difference to an earlier run of the same stream, see
+// DeltaEncoder. `run` holds the arguments, output and time of the run, but
+// only the trace entries after the first `prefix` entries of the parent, and
+// only the objects, members, elements and lengths of the universe that are
+// new or differ from the parent. Whatever the parent has and the run doesn't
+// is listed in `removed`. Runs without a parent are complete.
+//
+// Absent members, i.e. those with a null value, are left out of the output.
+// Deltas are taken between the members that are present, and reconstructed
+// runs have only those.
+public record RunDelta(int id, int parent, int prefix, List<Removal> removed, Runner.RunResult run) {
+
+    public static final int NO_PARENT = -1;
+    // A parent is always one of this many runs before its child, so that
+    // encoders and consumers only need to keep that many runs.
+    public static final int MAX_PARENT_DISTANCE = 1 << 12;
+
+    // Parts of an object of the parent that the run doesn't have. If `object`
+    // is set, the whole object is removed. It is then also in the universe of
+    // the delta if the run has it, with its members in the run's order.
+    public record Removal(Value.ObjectId id, boolean object, List<String> members, List<Integer> elements,
+            boolean length) {
+    }
+
+    public boolean hasParent() {
+        return parent != NO_PARENT;
+    }
+
+    // Reconstructs the complete run from the complete run of the parent.
+    public Runner.RunResult applyTo(Runner.RunResult parentRun) {
+        if (!hasParent()) {
+            return run;
+        }
+        var removals = new HashMap<Value.ObjectId, Removal>();
+        for (var removal : removed) {
+            removals.put(removal.id(), removal);
+        }
+
+        var universe = new Universe();
+        for (var entry : parentRun.universe().getObjects().entrySet()) {
+            var removal = removals.get(entry.getKey());
+            if (removal != null && removal.object()) {
+                continue;
+            }
+            var source = entry.getValue();
+            var object = universe.getOrCreateObject(entry.getKey());
+            DeltaEncoder.putPresent(object.members, source.members);
+            object.elements.putAll(source.elements);
+            object.length = source.length;
+            if (removal != null) {
+                removal.members().forEach(object.members::remove);
+                removal.elements().forEach(object.elements::remove);
+                if (removal.length()) {
+                    object.length = null;
+                }
+            }
+        }
+        // Changed members keep their position, new ones are appended.
+        for (var entry : run.universe().getObjects().entrySet()) {
+            var source = entry.getValue();
+            var object = universe.getOrCreateObject(entry.getKey());
+            DeltaEncoder.putPresent(object.members, source.members);
+            object.elements.putAll(source.elements);
+            if (source.length != null) {
+                object.length = source.length;
+            }
+        }
+
+        var trace = new Trace();
+        for (var i = 0; i < prefix; i++) {
+            trace.add(parentRun.trace().entries.get(i));
+        }
+        for (var entry : run.trace().entries) {
+            trace.add(entry);
+        }
+        return new Runner.RunResult(universe, run.args(), run.output(), trace, run.nanos());
+    }
+}
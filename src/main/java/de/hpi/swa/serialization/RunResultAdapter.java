@@ -1,62 +1,145 @@
 package de.hpi.swa.serialization;
 
-import com.google.gson.*;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import de.hpi.swa.generator.Runner;
 import de.hpi.swa.generator.Trace;
 import de.hpi.swa.generator.Universe;
 import de.hpi.swa.generator.Value;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-public class RunResultAdapter implements JsonSerializer<Runner.RunResult>, JsonDeserializer<Runner.RunResult> {
+// Writes run results field by field, so that logging a run doesn't build a
+// JSON tree first.
+public class RunResultAdapter extends TypeAdapter<Runner.RunResult> {
+
+    private final TypeAdapter<Universe> universes;
+    private final TraceEntryAdapter entries;
+
+    public RunResultAdapter(Gson gson) {
+        this.universes = gson.getAdapter(Universe.class);
+        this.entries = new TraceEntryAdapter();
+    }
 
     @Override
-    public JsonElement serialize(Runner.RunResult src, Type typeOfSrc, JsonSerializationContext context) {
-        JsonObject result = new JsonObject();
-        
-        result.add("universe", context.serialize(src.universe()));
-        result.add("input", context.serialize(src.input()));
-        result.add("didCrash", context.serialize(src.didCrash()));
+    public void write(JsonWriter out, Runner.RunResult src) throws IOException {
+        out.beginObject();
+        writeFields(out, src);
+        out.endObject();
+    }
+
+    // Writes the fields without enclosing braces, so that callers can add
+    // their own, e.g. a `type`.
+    public void writeFields(JsonWriter out, Runner.RunResult src) throws IOException {
+        out.name("universe");
+        universes.write(out, src.universe());
+        out.name("args");
+        TraceEntryAdapter.writePlainValues(out, src.args());
+        out.name("didCrash").value(src.didCrash());
 
         switch (src.output()) {
             case Runner.FunctionResult.Normal normal -> {
-                result.addProperty("outputType", "Normal");
-                result.addProperty("typeName", normal.typeName());
-                result.addProperty("value", normal.value());
+                out.name("outputType").value("Normal");
+                out.name("typeName").value(normal.typeName());
+                out.name("value").value(normal.value());
             }
             case Runner.FunctionResult.Crash crash -> {
-                result.addProperty("outputType", "Crash");
-                result.addProperty("message", crash.message());
-                result.add("stackTrace", context.serialize(crash.stackTrace()));
+                out.name("outputType").value("Crash");
+                out.name("message").value(crash.message());
+                out.name("stackTrace");
+                out.beginArray();
+                for (var frame : crash.stackTrace()) {
+                    out.value(frame);
+                }
+                out.endArray();
+            }
+            case Runner.FunctionResult.Timeout timeout -> {
+                out.name("outputType").value("Timeout");
+                out.name("millis").value(timeout.millis());
             }
         }
 
-        result.add("trace", context.serialize(src.trace()));
-        
-        return result;
+        out.name("trace");
+        out.beginObject();
+        out.name("entries");
+        out.beginArray();
+        for (var entry : src.trace().entries) {
+            entries.write(out, entry);
+        }
+        out.endArray();
+        out.endObject();
+        out.name("nanos").value(src.nanos());
     }
 
     @Override
-    public Runner.RunResult deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) 
-            throws JsonParseException {
-        JsonObject obj = json.getAsJsonObject();
-        // deserialize normally except for output
-        
-        Universe universe = context.deserialize(obj.get("universe"), de.hpi.swa.generator.Universe.class);
-        Value input = context.deserialize(obj.get("input"), Value.class);
-        Trace trace = context.deserialize(obj.get("trace"), Trace.class);
-        Runner.FunctionResult output = switch (obj.get("outputType").getAsString()) {
-            case "Normal" -> new Runner.FunctionResult.Normal(
-                obj.get("typeName").getAsString(),
-                obj.get("value").getAsString()
-            );
-            case "Crash" -> new Runner.FunctionResult.Crash(
-                obj.get("message").getAsString(),
-                context.deserialize(obj.get("stackTrace"), java.util.List.class)
-            );
+    public Runner.RunResult read(JsonReader in) throws IOException {
+        Universe universe = null;
+        List<Value> args = null;
+        Trace trace = null;
+        String outputType = null;
+        String typeName = null;
+        String value = null;
+        String message = null;
+        List<String> stackTrace = new ArrayList<>();
+        long millis = 0;
+        long nanos = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "universe" -> universe = universes.read(in);
+                case "args" -> args = entries.readValues(in);
+                case "outputType" -> outputType = in.nextString();
+                case "typeName" -> typeName = in.nextString();
+                case "value" -> value = in.nextString();
+                case "message" -> message = in.nextString();
+                case "stackTrace" -> {
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        stackTrace.add(in.nextString());
+                    }
+                    in.endArray();
+                }
+                case "millis" -> millis = in.nextLong();
+                case "nanos" -> nanos = in.nextLong();
+                case "trace" -> trace = readTrace(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        if (outputType == null) {
+            throw new JsonParseException("Unknown output type");
+        }
+
+        Runner.FunctionResult output = switch (outputType) {
+            case "Normal" -> new Runner.FunctionResult.Normal(typeName, value);
+            case "Crash" -> new Runner.FunctionResult.Crash(message, stackTrace);
+            case "Timeout" -> new Runner.FunctionResult.Timeout(millis);
             default -> throw new JsonParseException("Unknown output type");
         };
-        return new Runner.RunResult(universe, input, output, trace);
+        return new Runner.RunResult(universe, args, output, trace, nanos);
+    }
+
+    private Trace readTrace(JsonReader in) throws IOException {
+        var trace = new Trace();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("entries")) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    trace.add(entries.read(in));
+                }
+                in.endArray();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return trace;
     }
 }
@@ -1,70 +1,140 @@
 package de.hpi.swa.serialization;
 
-import com.google.gson.*;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import de.hpi.swa.generator.Trace;
 import de.hpi.swa.generator.Value;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-public class TraceEntryAdapter implements JsonSerializer<Trace.TraceEntry>, JsonDeserializer<Trace.TraceEntry> {
+public class TraceEntryAdapter extends TypeAdapter<Trace.TraceEntry> {
+
+    private final ValueAdapter values = new ValueAdapter();
 
     @Override
-    public JsonElement serialize(Trace.TraceEntry entry, Type typeOfSrc, JsonSerializationContext context) {
-        JsonObject result = new JsonObject();
-        
+    public void write(JsonWriter out, Trace.TraceEntry entry) throws IOException {
+        out.beginObject();
         switch (entry) {
             case Trace.Call call -> {
-                result.addProperty("type", "Call");
-                result.add("arg", context.serialize(call.arg()));
+                out.name("type").value("Call");
+                out.name("args");
+                writePlainValues(out, call.args());
             }
             case Trace.QueryMember query -> {
-                result.addProperty("type", "QueryMember");
-                result.add("id", context.serialize(query.id()));
-                result.addProperty("key", query.key());
+                out.name("type").value("QueryMember");
+                out.name("id");
+                ValueAdapter.writeId(out, query.id());
+                out.name("key").value(query.key());
             }
             case Trace.Member member -> {
-                result.addProperty("type", "Member");
-                result.add("id", context.serialize(member.id()));
-                result.addProperty("key", member.key());
-                result.add("value", context.serialize(member.value()));
+                out.name("type").value("Member");
+                out.name("id");
+                ValueAdapter.writeId(out, member.id());
+                out.name("key").value(member.key());
+                out.name("value");
+                ValueAdapter.writePlain(out, member.value());
+            }
+            case Trace.Length length -> {
+                out.name("type").value("Length");
+                out.name("id");
+                ValueAdapter.writeId(out, length.id());
+                out.name("length").value(length.length());
+            }
+            case Trace.Element element -> {
+                out.name("type").value("Element");
+                out.name("id");
+                ValueAdapter.writeId(out, element.id());
+                out.name("index").value(element.index());
+                out.name("value");
+                ValueAdapter.writePlain(out, element.value());
             }
             case Trace.Return ret -> {
-                result.addProperty("type", "Return");
-                result.addProperty("typeName", ret.typeName());
-                result.addProperty("value", ret.value());
+                out.name("type").value("Return");
+                out.name("typeName").value(ret.typeName());
+                out.name("value").value(ret.value());
             }
             case Trace.Crash crash -> {
-                result.addProperty("type", "Crash");
-                result.addProperty("message", crash.message());
+                out.name("type").value("Crash");
+                out.name("message").value(crash.message());
+            }
+            case Trace.Timeout timeout -> {
+                out.name("type").value("Timeout");
+                out.name("millis").value(timeout.millis());
             }
         }
-        
+        out.endObject();
+    }
+
+    static void writePlainValues(JsonWriter out, List<Value> values) throws IOException {
+        out.beginArray();
+        for (var value : values) {
+            ValueAdapter.writePlain(out, value);
+        }
+        out.endArray();
+    }
+
+    List<Value> readValues(JsonReader in) throws IOException {
+        var result = new ArrayList<Value>();
+        in.beginArray();
+        while (in.hasNext()) {
+            result.add(values.read(in));
+        }
+        in.endArray();
         return result;
     }
 
     @Override
-    public Trace.TraceEntry deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) 
-            throws JsonParseException {
-        JsonObject obj = json.getAsJsonObject();
-        String type = obj.get("type").getAsString();
-        
+    public Trace.TraceEntry read(JsonReader in) throws IOException {
+        String type = null;
+        Value.ObjectId id = null;
+        String key = null;
+        String text = null;
+        Value value = null;
+        List<Value> args = null;
+        String typeName = null;
+        String message = null;
+        long number = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "type" -> type = in.nextString();
+                case "id" -> id = ValueAdapter.readId(in);
+                case "key" -> key = in.nextString();
+                case "args" -> args = readValues(in);
+                case "typeName" -> typeName = in.nextString();
+                case "message" -> message = in.nextString();
+                case "length", "index", "millis" -> number = in.nextLong();
+                case "value" -> {
+                    // A value of a decision, or the printed return value.
+                    if (in.peek() == JsonToken.STRING) {
+                        text = in.nextString();
+                    } else {
+                        value = values.read(in);
+                    }
+                }
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        if (type == null) {
+            throw new JsonParseException("TraceEntry without type");
+        }
+
         return switch (type) {
-            case "Call" -> new Trace.Call(context.deserialize(obj.get("arg"), Value.class));
-            case "QueryMember" -> new Trace.QueryMember(
-                context.deserialize(obj.get("id"), Value.ObjectId.class),
-                obj.get("key").getAsString()
-            );
-            case "Member" -> new Trace.Member(
-                context.deserialize(obj.get("id"), Value.ObjectId.class),
-                obj.get("key").getAsString(),
-                context.deserialize(obj.get("value"), Value.class)
-            );
-            case "Return" -> new Trace.Return(
-                obj.get("typeName").getAsString(), 
-                obj.get("value").getAsString()
-            );
-            case "Crash" -> new Trace.Crash(obj.get("message").getAsString());
+            case "Call" -> new Trace.Call(args);
+            case "QueryMember" -> new Trace.QueryMember(id, key);
+            case "Member" -> new Trace.Member(id, key, value);
+            case "Length" -> new Trace.Length(id, (int) number);
+            case "Element" -> new Trace.Element(id, (int) number, value);
+            case "Return" -> new Trace.Return(typeName, text);
+            case "Crash" -> new Trace.Crash(message);
+            case "Timeout" -> new Trace.Timeout(number);
             default -> throw new JsonParseException("Unknown TraceEntry type: " + type);
         };
     }
@@ -1,60 +1,177 @@
 package de.hpi.swa.serialization;
 
-import com.google.gson.*;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
 import de.hpi.swa.generator.Value;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
 
-public class ValueAdapter implements JsonSerializer<Value>, JsonDeserializer<Value> {
+// Values with a `type` discriminator. Inside traces and as arguments, values
+// are written without it (see `writePlain`), reading accepts both.
+public class ValueAdapter extends TypeAdapter<Value> {
 
     @Override
-    public JsonElement serialize(Value value, Type typeOfSrc, JsonSerializationContext context) {
-        JsonObject result = new JsonObject();
-        
+    public void write(JsonWriter out, Value value) throws IOException {
+        out.beginObject();
         switch (value) {
             case Value.Null() -> {
-                result.addProperty("type", "Null");
+                out.name("type").value("Null");
             }
             case Value.Boolean bool -> {
-                result.addProperty("type", "Boolean");
-                result.addProperty("value", bool.value());
+                out.name("type").value("Boolean");
+                out.name("value").value(bool.value());
             }
             case Value.Int intVal -> {
-                result.addProperty("type", "Int");
-                result.addProperty("value", intVal.value());
+                out.name("type").value("Int");
+                out.name("value").value(intVal.value());
             }
             case Value.Double dbl -> {
-                result.addProperty("type", "Double");
-                result.addProperty("value", dbl.value());
+                out.name("type").value("Double");
+                if (Double.isNaN(dbl.value()) || Double.isInfinite(dbl.value())) {
+                    // JSON has no literals for these, so they are written as "NaN",
+                    // "Infinity" or "-Infinity".
+                    out.name("value").value(String.valueOf(dbl.value()));
+                } else {
+                    out.name("value").value(dbl.value());
+                }
             }
             case Value.StringValue str -> {
-                result.addProperty("type", "String");
-                result.addProperty("value", str.value());
+                out.name("type").value("String");
+                out.name("value").value(str.value());
             }
             case Value.ObjectValue obj -> {
-                result.addProperty("type", "Object");
-                result.add("id", context.serialize(obj.id()));
+                out.name("type").value("Object");
+                out.name("id");
+                writeId(out, obj.id());
+            }
+            case Value.ArrayValue arr -> {
+                out.name("type").value("Array");
+                out.name("id");
+                writeId(out, arr.id());
+            }
+        }
+        out.endObject();
+    }
+
+    // Writes only the fields of the value, e.g. `{"value": 42}`. Non-finite
+    // doubles are left out like other nulls, and so are absent members.
+    public static void writePlain(JsonWriter out, Value value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        switch (value) {
+            case Value.Null() -> {
+            }
+            case Value.Boolean bool -> out.name("value").value(bool.value());
+            case Value.Int intVal -> out.name("value").value(intVal.value());
+            case Value.Double dbl -> {
+                if (!Double.isNaN(dbl.value()) && !Double.isInfinite(dbl.value())) {
+                    out.name("value").value(dbl.value());
+                }
+            }
+            case Value.StringValue str -> out.name("value").value(str.value());
+            case Value.ObjectValue obj -> {
+                out.name("id");
+                writeId(out, obj.id());
+            }
+            case Value.ArrayValue arr -> {
+                out.name("id");
+                writeId(out, arr.id());
+            }
+        }
+        out.endObject();
+    }
+
+    static void writeId(JsonWriter out, Value.ObjectId id) throws IOException {
+        out.beginObject();
+        out.name("value").value(id.value);
+        out.endObject();
+    }
+
+    static Value.ObjectId readId(JsonReader in) throws IOException {
+        Value.ObjectId id = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            if (in.nextName().equals("value")) {
+                id = new Value.ObjectId(in.nextInt());
+            } else {
+                in.skipValue();
             }
         }
-        
-        return result;
+        in.endObject();
+        if (id == null) {
+            throw new JsonParseException("Object id without value");
+        }
+        return id;
     }
 
     @Override
-    public Value deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) 
-            throws JsonParseException {
-        JsonObject obj = json.getAsJsonObject();
-        String type = obj.get("type").getAsString();
-        
+    public Value read(JsonReader in) throws IOException {
+        String type = null;
+        Value.ObjectId id = null;
+        JsonToken valueToken = null;
+        Object value = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "type" -> type = in.nextString();
+                case "id" -> id = readId(in);
+                case "value" -> {
+                    valueToken = in.peek();
+                    value = switch (valueToken) {
+                        case BOOLEAN -> in.nextBoolean();
+                        case NUMBER, STRING -> in.nextString();
+                        default -> {
+                            in.skipValue();
+                            yield null;
+                        }
+                    };
+                }
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (type == null) {
+            // Plain values only tell objects and arrays apart by their
+            // entry in the universe, so both are read as objects.
+            if (id != null) {
+                return new Value.ObjectValue(id);
+            }
+            if (valueToken == null) {
+                return new Value.Null();
+            }
+            type = switch (valueToken) {
+                case BOOLEAN -> "Boolean";
+                case STRING -> "String";
+                default -> isInt((String) value) ? "Int" : "Double";
+            };
+        }
+
         return switch (type) {
             case "Null" -> new Value.Null();
-            case "Boolean" -> new Value.Boolean(obj.get("value").getAsBoolean());
-            case "Int" -> new Value.Int(obj.get("value").getAsInt());
-            case "Double" -> new Value.Double(obj.get("value").getAsDouble());
-            case "String" -> new Value.StringValue(obj.get("value").getAsString());
-            case "Object" -> new Value.ObjectValue(context.deserialize(obj.get("id"), Value.ObjectId.class));
+            case "Boolean" -> new Value.Boolean((java.lang.Boolean) value);
+            case "Int" -> new Value.Int(Integer.parseInt((String) value));
+            case "Double" -> new Value.Double(Double.parseDouble((String) value));
+            case "String" -> new Value.StringValue((String) value);
+            case "Object" -> new Value.ObjectValue(id);
+            case "Array" -> new Value.ArrayValue(id);
             default -> throw new JsonParseException("Unknown Value type: " + type);
         };
     }
+
+    private static boolean isInt(String number) {
+        try {
+            Integer.parseInt(number);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
 }
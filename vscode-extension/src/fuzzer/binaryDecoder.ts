@@ -0,0 +1,299 @@
+// Decodes the binary output of `--binary` into the same objects as the JSON
+// lines of `--tooling`. Values are always typed, also in traces and arguments.
+// See the README of the fuzzer for the layout.
+
+const RUN = 1;
+const PROGRESS = 2;
+const ANALYSIS = 3;
+const RUN_DELTA = 4;
+const SNAPSHOT = 5;
+
+const NEW_STRING = 0;
+const INLINE_STRING = 1;
+const NULL_STRING = 2;
+const FIRST_REFERENCE = 3;
+
+const OUTPUT_TYPES = ['Normal', 'Crash', 'Timeout'];
+
+export interface IBinaryDecoder {
+    // Returns the messages completed by this chunk.
+    push(chunk: Buffer): any[];
+}
+
+export const createBinaryDecoder = (): IBinaryDecoder => {
+    // Interned strings of the whole stream
+    const strings: string[] = [];
+    let pending: Buffer = Buffer.alloc(0);
+
+    const push = (chunk: Buffer): any[] => {
+        pending = pending.length === 0 ? chunk : Buffer.concat([pending, chunk]);
+        const messages: any[] = [];
+        let offset = 0;
+        while (pending.length - offset >= 4) {
+            const length = pending.readUInt32BE(offset);
+            if (pending.length - offset - 4 < length) {
+                break;
+            }
+            messages.push(decodeFrame(pending.subarray(offset + 4, offset + 4 + length)));
+            offset += 4 + length;
+        }
+        pending = pending.subarray(offset);
+        return messages;
+    };
+
+    const decodeFrame = (frame: Buffer): any => {
+        const reader = createReader(frame, strings);
+        const kind = reader.byte();
+        switch (kind) {
+            case RUN:
+                return { type: 'run', ...readRun(reader) };
+            case PROGRESS:
+                return {
+                    type: 'progress',
+                    executions: reader.varint(),
+                    millis: reader.varint(),
+                    coveredSections: reader.varint(),
+                    outputs: reader.varint(),
+                    poolSize: reader.varint(),
+                    emitted: reader.varint(),
+                };
+            case ANALYSIS:
+                return { type: 'analysis', groups: reader.list(() => readGroup(reader)) };
+            case RUN_DELTA:
+                return { type: 'run', ...readDelta(reader) };
+            case SNAPSHOT:
+                return { type: 'snapshot', groups: reader.list(() => readGroup(reader)) };
+            default:
+                throw new Error(`Unknown frame kind ${kind}`);
+        }
+    };
+
+    return { push };
+};
+
+type Reader = ReturnType<typeof createReader>;
+
+const createReader = (buffer: Buffer, strings: string[]) => {
+    let offset = 0;
+
+    const byte = (): number => buffer[offset++];
+
+    // Unsigned LEB128. Multiplication instead of shifts, since bitwise
+    // operators are limited to 32 bits.
+    const varint = (): number => {
+        let result = 0;
+        let factor = 1;
+        while (true) {
+            const b = buffer[offset++];
+            result += (b & 0x7f) * factor;
+            if ((b & 0x80) === 0) {
+                return result;
+            }
+            factor *= 128;
+        }
+    };
+
+    const signed = (): number => {
+        const zigzag = varint();
+        return zigzag % 2 === 0 ? zigzag / 2 : -(zigzag + 1) / 2;
+    };
+
+    const double = (): number => {
+        const value = buffer.readDoubleBE(offset);
+        offset += 8;
+        return value;
+    };
+
+    const string = (): string | null => {
+        const tag = varint();
+        if (tag >= FIRST_REFERENCE) {
+            return strings[tag - FIRST_REFERENCE];
+        }
+        if (tag === NULL_STRING) {
+            return null;
+        }
+        const length = varint();
+        const value = buffer.toString('utf8', offset, offset + length);
+        offset += length;
+        if (tag === NEW_STRING) {
+            strings.push(value);
+        }
+        return value;
+    };
+
+    // Member and score names, which are never null
+    const key = (): string => {
+        const value = string();
+        if (value === null) {
+            throw new Error('Unexpected null key');
+        }
+        return value;
+    };
+
+    const list = <T>(read: () => T): T[] => {
+        const count = varint();
+        const result: T[] = [];
+        for (let i = 0; i < count; i++) {
+            result.push(read());
+        }
+        return result;
+    };
+
+    return { byte, varint, signed, double, string, key, list };
+};
+
+const readValue = (reader: Reader): any => {
+    const tag = reader.byte();
+    switch (tag) {
+        case 0: return { type: 'Null' };
+        case 1: return { type: 'Boolean', value: false };
+        case 2: return { type: 'Boolean', value: true };
+        case 3: return { type: 'Int', value: reader.signed() };
+        case 4: return { type: 'Double', value: doubleToJson(reader.double()) };
+        case 5: return { type: 'String', value: reader.string() };
+        case 6: return { type: 'Object', id: { value: reader.varint() } };
+        case 7: return { type: 'Array', id: { value: reader.varint() } };
+        // Absent members, which JSON leaves out
+        case 8: return undefined;
+        default: throw new Error(`Unknown value tag ${tag}`);
+    }
+};
+
+// Non-finite doubles are strings in JSON as well.
+const doubleToJson = (value: number): number | string => {
+    if (Number.isNaN(value)) {
+        return 'NaN';
+    }
+    if (!Number.isFinite(value)) {
+        return value > 0 ? 'Infinity' : '-Infinity';
+    }
+    return value;
+};
+
+const readRun = (reader: Reader): any => {
+    const objects: Record<string, any> = {};
+    const objectCount = reader.varint();
+    for (let i = 0; i < objectCount; i++) {
+        const id = reader.varint();
+        const members: Record<string, any> = {};
+        const memberCount = reader.varint();
+        for (let m = 0; m < memberCount; m++) {
+            const key = reader.key();
+            members[key] = readValue(reader);
+        }
+        const elements: Record<string, any> = {};
+        const elementCount = reader.varint();
+        for (let e = 0; e < elementCount; e++) {
+            const index = reader.varint();
+            elements[index] = readValue(reader);
+        }
+        const length = reader.varint();
+        objects[`$${id}`] = length === 0 ? { members, elements } : { members, elements, length: length - 1 };
+    }
+
+    const args = reader.list(() => readValue(reader));
+
+    const outputTag = reader.byte();
+    const run: any = { universe: { objects }, args, didCrash: outputTag === 1, outputType: OUTPUT_TYPES[outputTag] };
+    if (outputTag === 0) {
+        run.typeName = reader.string();
+        run.value = reader.string();
+    } else if (outputTag === 1) {
+        run.message = reader.string();
+        run.stackTrace = reader.list(() => reader.string());
+    } else {
+        run.millis = reader.varint();
+    }
+
+    run.trace = { entries: reader.list(() => readEntry(reader)) };
+    run.nanos = reader.varint();
+    return run;
+};
+
+// Like the JSON of `--delta`, see deltaReconstructor.ts
+const readDelta = (reader: Reader): any => {
+    const id = reader.varint();
+    const parent = reader.varint() - 1;
+    const prefix = reader.varint();
+    const removed: Record<string, any> = {};
+    const removalCount = reader.varint();
+    for (let i = 0; i < removalCount; i++) {
+        const objectId = reader.varint();
+        const flags = reader.byte();
+        const removal: any = {};
+        if (flags & 1) {
+            removal.object = true;
+        }
+        const members = reader.list(() => reader.key());
+        if (members.length > 0) {
+            removal.members = members;
+        }
+        const elements = reader.list(() => reader.varint());
+        if (elements.length > 0) {
+            removal.elements = elements;
+        }
+        if (flags & 2) {
+            removal.length = true;
+        }
+        removed[`$${objectId}`] = removal;
+    }
+    const run = readRun(reader);
+    if (parent < 0) {
+        return { id, ...run };
+    }
+    return removalCount > 0 ? { id, parent, prefix, removed, ...run } : { id, parent, prefix, ...run };
+};
+
+const readEntry = (reader: Reader): any => {
+    const tag = reader.byte();
+    switch (tag) {
+        case 0: return { type: 'Call', args: reader.list(() => readValue(reader)) };
+        case 1: return { type: 'QueryMember', id: { value: reader.varint() }, key: reader.string() };
+        case 2: return { type: 'Member', id: { value: reader.varint() }, key: reader.string(), value: readValue(reader) };
+        case 3: return { type: 'Length', id: { value: reader.varint() }, length: reader.varint() };
+        case 4: return { type: 'Element', id: { value: reader.varint() }, index: reader.varint(), value: readValue(reader) };
+        case 5: return { type: 'Return', typeName: reader.string(), value: reader.string() };
+        case 6: return { type: 'Crash', message: reader.string() };
+        case 7: return { type: 'Timeout', millis: reader.varint() };
+        default: throw new Error(`Unknown trace entry tag ${tag}`);
+    }
+};
+
+const readScores = (reader: Reader): Record<string, number | null> => {
+    const scores: Record<string, number | null> = {};
+    const count = reader.varint();
+    for (let i = 0; i < count; i++) {
+        const key = reader.key();
+        const value = reader.double();
+        // Like the JSON output, which writes non-finite scores as null
+        scores[key] = Number.isFinite(value) ? value : null;
+    }
+    return scores;
+};
+
+const readKey = (reader: Reader): any => {
+    const tag = reader.byte();
+    switch (tag) {
+        case 0: return { type: 'InputShape', shape: reader.string() };
+        case 1: return { type: 'PathHash', hash: reader.signed(), length: reader.varint() };
+        case 2: return { type: 'OutputShape', value: reader.string() };
+        case 3: return { type: 'ExceptionType', value: reader.string() };
+        case 4: return { type: 'Generic', value: reader.string() };
+        case 5: return { type: 'Composite', parts: reader.list(() => readKey(reader)) };
+        default: throw new Error(`Unknown group key tag ${tag}`);
+    }
+};
+
+const readGroup = (reader: Reader): any => {
+    const key = readKey(reader);
+    const score = reader.double();
+    const groupScores = readScores(reader);
+    const results = reader.list(() => ({
+        result: readRun(reader),
+        score: reader.double(),
+        itemScores: readScores(reader),
+        groupScores: readScores(reader),
+        key: readKey(reader),
+    }));
+    return { key, results, score, groupScores };
+};
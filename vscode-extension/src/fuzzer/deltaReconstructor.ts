@@ -0,0 +1,73 @@
+// Turns the runs of `--delta` back into complete runs, see the README of the
+// fuzzer. Works on decoded JSON lines and binary frames alike. Other messages
+// and complete runs pass through.
+
+export interface IDeltaReconstructor {
+    reconstruct(message: any): any;
+}
+
+// Like RunDelta.MAX_PARENT_DISTANCE, a parent is always one of this many runs
+// before its child.
+const MAX_PARENT_DISTANCE = 1 << 12;
+
+export const createDeltaReconstructor = (): IDeltaReconstructor => {
+    // The reconstructed runs that can still be parents, by id
+    const runs = new Map<number, any>();
+
+    const reconstruct = (message: any): any => {
+        if (message.type !== 'run' || message.id === undefined) {
+            return message;
+        }
+        const { parent, prefix, removed, ...run } = message;
+        if (parent !== undefined) {
+            const base = runs.get(parent);
+            if (!base) {
+                throw new Error(`Run ${run.id} refers to unknown parent ${parent}`);
+            }
+            run.universe = applyUniverse(base.universe, removed ?? {}, run.universe);
+            run.trace = { entries: [...base.trace.entries.slice(0, prefix), ...run.trace.entries] };
+        }
+        runs.set(run.id, run);
+        // Ids count up by one, so this is the only run the next one can't refer to.
+        runs.delete(run.id - MAX_PARENT_DISTANCE);
+        return run;
+    };
+
+    return { reconstruct };
+};
+
+const applyUniverse = (base: any, removed: Record<string, any>, changes: any): any => {
+    const objects: Record<string, any> = {};
+    for (const [key, object] of Object.entries<any>(base.objects)) {
+        const removal = removed[key];
+        if (removal?.object) {
+            continue;
+        }
+        const copy: any = { members: { ...object.members }, elements: { ...object.elements } };
+        if (object.length !== undefined && !removal?.length) {
+            copy.length = object.length;
+        }
+        for (const member of removal?.members ?? []) {
+            delete copy.members[member];
+        }
+        for (const index of removal?.elements ?? []) {
+            delete copy.elements[index];
+        }
+        objects[key] = copy;
+    }
+    // Changed members keep their position, new ones are appended.
+    for (const [key, object] of Object.entries<any>(changes.objects)) {
+        const target = objects[key] ?? (objects[key] = { members: {}, elements: {} });
+        Object.assign(target.members, object.members);
+        Object.assign(target.elements, object.elements);
+        if (object.length !== undefined) {
+            target.length = object.length;
+        }
+    }
+    if (changes.nextId === undefined) {
+        return { objects };
+    }
+    // The JSON output has the next id, which follows from the objects.
+    const ids = Object.keys(objects).map(key => Number(key.substring(1)));
+    return { objects, nextId: ids.length === 0 ? 0 : Math.max(...ids) + 1 };
+};
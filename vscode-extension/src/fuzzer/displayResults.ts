@@ -42,10 +42,12 @@ const addDecorationForFuzzerResult = (editor: vscode.TextEditor, result: IFuzzer
 };
 
 const resultToDecorationString = (result: IFuzzerResult): string => {
-    const inputValue = valueToString(result.input, result.universe);
+    const inputValue = argsToString(result.args, result.universe);
     const outcome = result.trace.entries[result.trace.entries.length - 1];
     if (outcome.type === 'Crash') {
         return `${inputValue} -> Crash: ${outcome.message}`;
+    } else if (outcome.type === 'Timeout') {
+        return `${inputValue} -> Timeout after ${outcome.millis} ms`;
     } else if (outcome.type === 'Return') {
         const outputValue = valueAndTypeNameToString(outcome.value, outcome.typeName);
         return `${inputValue} -> ${outputValue}`;
@@ -57,12 +59,14 @@ const resultToDecorationString = (result: IFuzzerResult): string => {
 const logFuzzerResults = (output: vscode.OutputChannel, results: IFuzzerResult[]) => {
     output.appendLine(`Received ${results.length} fuzzing results.`);
     results.forEach(result => {
-        const inputValue = valueToString(result.input, result.universe);
+        const inputValue = argsToString(result.args, result.universe);
         output.append(`Input: ${inputValue}`);
         output.append(' -> ');
         const outcome = result.trace.entries[result.trace.entries.length - 1];
         if (outcome.type === 'Crash') {
             output.append(`Crashed: ${outcome.message}`);
+        } else if (outcome.type === 'Timeout') {
+            output.append(`Timed out after ${outcome.millis} ms`);
         } else if (outcome.type === 'Return') {
             output.append(`${outcome.value} (${outcome.typeName})`);
         } else {
@@ -81,6 +85,9 @@ const valueAndTypeNameToString = (value: string, typeName: string): string => {
     };
 };
 
+const argsToString = (args: IValue[], universe: IUniverse): string =>
+    args.map(arg => valueToString(arg, universe)).join(', ');
+
 const valueToString = (input: IValue, universe: IUniverse): string => {
     switch (input.type) {
         case 'Null':
@@ -90,6 +97,9 @@ const valueToString = (input: IValue, universe: IUniverse): string => {
         case 'Int':
             return input.value.toString();
         case 'Double':
+            if (typeof input.value === 'string') {
+                return input.value; // NaN, Infinity or -Infinity
+            }
             // show up to 4 decimal places
             let fixed = input.value.toFixed(4);
             while (fixed.endsWith('0') || fixed.endsWith('.')) {
@@ -107,6 +117,18 @@ const valueToString = (input: IValue, universe: IUniverse): string => {
             } else {
                 return 'Object (unknown)';
             }
+        case 'Array':
+            const arrDef = universe.objects['$' + input.id.value];
+            if (arrDef && arrDef.length !== undefined) {
+                const elementStrings = [];
+                for (let i = 0; i < arrDef.length; i++) {
+                    const element = arrDef.elements[i];
+                    elementStrings.push(element ? valueToString(element, universe) : '?');
+                }
+                return `[${elementStrings.join(', ')}]`;
+            } else {
+                return '[...]';
+            }
         default:
             return 'Unknown';
     }
@@ -1,9 +1,11 @@
 import { ChildProcessWithoutNullStreams, spawn } from 'child_process';
 import * as path from 'path';
 import * as vscode from 'vscode';
-import { IProcessState, IState } from '../types/state';
+import { IFuzzerResult, IProcessState, IState } from '../types/state';
 import * as fs from 'fs';
 import { IExtensionContext } from '../types/context';
+import { createBinaryDecoder } from './binaryDecoder';
+import { createDeltaReconstructor } from './deltaReconstructor';
 
 export const spawnFuzzerProcess = (extensionPath: string, file: string, toJSON: boolean = true): ChildProcessWithoutNullStreams => {
     // TODO: Move the platform specific native builds into the extension directory. Part of distribution when published.
@@ -12,9 +14,12 @@ export const spawnFuzzerProcess = (extensionPath: string, file: string, toJSON:
     const script = isWin
         ? path.join(extensionPath, '..', 'graalfuzz.cmd')
         : path.join(extensionPath, '..', 'graalfuzz.sh');
-    const args = ['--file', `"${file}"`, '--no-color'];
+    // Stop as soon as nothing new is being found, so that results show up early.
+    const args = ['--file', `"${file}"`, '--no-color', '--plateau-execs', '200', '--max-time', '30'];
     if (toJSON) {
-        args.push('--tooling');
+        // Results are decoded from the compact binary format, see binaryDecoder.ts,
+        // and runs are sent as deltas against earlier runs, see deltaReconstructor.ts
+        args.push('--binary', '--delta');
     }
     console.log(`Spawning fuzzer process: ${script} ${args.join(' ')}`);
     return spawn(script, args, { stdio: 'pipe', shell: isWin, cwd: path.join(extensionPath, '..') });
@@ -43,18 +48,33 @@ export const writeProcessOutputToState = (ctx: IExtensionContext, processState:
         throw new Error('No process found in process state.');
     }
 
-    let stdout = '';
-    // once the process exits, we resolve the promises
-    processState.stdout = new Promise<string>((resolve) => {
-        process.on('exit', () => {
-            resolve(stdout);
+    // Frames are decoded as they arrive, once the process exits, we resolve the promises
+    const decoder = createBinaryDecoder();
+    const reconstructor = createDeltaReconstructor();
+    const messages: any[] = [];
+    let decodingError: Error | undefined;
+    processState.results = new Promise<IFuzzerResult[]>((resolve, reject) => {
+        // Unlike 'exit', 'close' waits until stdout is drained.
+        process.on('close', () => {
+            if (decodingError) {
+                reject(decodingError);
+            } else {
+                // Progress messages only describe the coverage timeline.
+                resolve(messages.filter(message => message.type !== 'progress' && message.type !== 'snapshot'));
+            }
         });
     });
-    process.stdout.setEncoding('utf8');
-    process.stdout.on('data', (d: string) => {
-        stdout += d;
+    process.stdout.on('data', (d: Buffer) => {
+        if (decodingError) {
+            return;
+        }
+        try {
+            messages.push(...decoder.push(d).map(reconstructor.reconstruct));
+        } catch (err) {
+            decodingError = err as Error;
+        }
     });
-    // TODO: We could also stream results line by line without having to wait for process exit
+    // TODO: We could also stream results as they are decoded without having to wait for process exit
     createFuzzerResultsOnceExited(ctx, processState);
 
     let stderr = '';
@@ -70,17 +90,13 @@ export const writeProcessOutputToState = (ctx: IExtensionContext, processState:
 };
 
 const createFuzzerResultsOnceExited = async (ctx: IExtensionContext, processState: IProcessState) => {
-    if (!processState.stdout) {
-        vscode.window.showErrorMessage('No stdout promise found in process state.');
+    if (!processState.results) {
+        vscode.window.showErrorMessage('No results promise found in process state.');
         return;
     }
 
     try {
-        const data = await processState.stdout;
-        const lines = data.trim().split('\n').filter(line => line.trim());
-        const results = lines.map(line => JSON.parse(line));
-
-        processState.results = Promise.resolve(results);
+        await processState.results;
         ctx.events.onFuzzerResultsReady.fire(processState);
     } catch (err) {
         vscode.window.showErrorMessage(`Error parsing fuzzer output: ${(err as Error).message}`);
@@ -19,7 +19,7 @@ export interface IProcessState {
 
 export interface IFuzzerResult {
     universe: IUniverse;
-    input: IValue;
+    args: IValue[];
     trace: ITrace;
 }
 
@@ -29,6 +29,8 @@ export interface IUniverse {
 
 export interface IObjectDefinition {
     members: Record<string, IValue>;
+    elements: Record<string, IValue>;
+    length?: number;
 }
 
 export interface ITrace {
@@ -36,19 +38,23 @@ export interface ITrace {
 }
 
 export type ITraceEntry =
-    | { type: "Call"; arg: Partial<Omit<IValue, "type">> }
+    | { type: "Call"; args: Partial<Omit<IValue, "type">>[] }
     | { type: "QueryMember"; id: { value: number }; key: string }
     | { type: "Member"; id: { value: number }; key: string }
+    | { type: "Length"; id: { value: number }; length: number }
+    | { type: "Element"; id: { value: number }; index: number; value: IValue }
     | { type: "Return"; typeName: string; value: string }
-    | { type: "Crash"; message: string };
+    | { type: "Crash"; message: string }
+    | { type: "Timeout"; millis: number };
 
 export type IValue =
     | { type: "Null" }
     | { type: "Boolean"; value: boolean }
     | { type: "Int"; value: number }
-    | { type: "Double"; value: number }
+    | { type: "Double"; value: number | "NaN" | "Infinity" | "-Infinity" }
     | { type: "String"; value: string }
-    | { type: "Object"; id: { value: number } };
+    | { type: "Object"; id: { value: number } }
+    | { type: "Array"; id: { value: number } };
 
 export const createState = ({
     processes = [],